@@ -0,0 +1,111 @@
+package com.whitelightgrp.mobility.android.database.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.whitelightgrp.mobility.android.database.BulkMode;
+
+/**
+ * A small database shared by the microbenchmarks: one table of {@link #ROWS} rows with a unique text key and a column of every storage class. Large
+ * databases of a given file size, for the benchmarks that measure file access, are filled by {@link #fill(SQLiteDatabase, long)}.
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+final class BenchmarkFixture {
+
+    /**
+     * Table holding the fixture rows.
+     */
+    static final String TABLE = "Items";
+    /**
+     * Number of rows, numbered from 1.
+     */
+    static final int ROWS = 10000;
+
+    /**
+     * Rows added per insert statement while filling a large database.
+     */
+    private static final int ROWS_PER_BATCH = 100000;
+
+    /**
+     * Not instantiable.
+     */
+    private BenchmarkFixture() {
+    }
+
+    /**
+     * Create and fill a fixture database in a new temporary file, deleted when the JVM exits.
+     *
+     * @return The open database.
+     * @throws IOException If the temporary file could not be created.
+     */
+    static SQLiteDatabase create() throws IOException {
+        File file = File.createTempFile("sqliteutils-jmh", ".db");
+        file.delete();
+        file.deleteOnExit();
+        new File(file.getPath() + "-journal").deleteOnExit();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        db.execSQL("CREATE TABLE " + TABLE + " (id INTEGER PRIMARY KEY, code TEXT NOT NULL, descr TEXT, qty INTEGER, price REAL, payload BLOB)");
+        db.execSQL("CREATE UNIQUE INDEX ix_" + TABLE + "_code ON " + TABLE + " (code)");
+        db.execSQL(
+                "WITH RECURSIVE seq(n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM seq WHERE n < " + ROWS + ") "
+                        + "INSERT INTO " + TABLE + " (id, code, descr, qty, price, payload) "
+                        + "SELECT n, printf('C%010d', n), 'Item ' || n, n % 1000, n / 100.0, randomblob(32) FROM seq"
+        );
+        return db;
+    }
+
+    /**
+     * Create the fixture table in an empty database and add rows until the file reaches a given size. The rows have the codes returned by
+     * {@link #code(int)}, numbered from 1, and a 192-character description, so that lookups spread over the whole file.
+     *
+     * @param db The empty database.
+     * @param bytes The file size to reach, in bytes.
+     * @return The number of rows added.
+     */
+    static long fill(SQLiteDatabase db, long bytes) {
+        db.execSQL("CREATE TABLE " + TABLE + " (id INTEGER PRIMARY KEY, code TEXT NOT NULL, descr TEXT, qty INTEGER)");
+        db.execSQL("CREATE UNIQUE INDEX ix_" + TABLE + "_code ON " + TABLE + " (code)");
+        BulkMode bulk = BulkMode.enter(db);
+        try {
+            long rows = 0;
+            while (fileBytes(db) < bytes) {
+                db.execSQL(
+                        "WITH RECURSIVE seq(n) AS (SELECT ? UNION ALL SELECT n + 1 FROM seq WHERE n < ?) "
+                                + "INSERT INTO " + TABLE + " (id, code, descr, qty) "
+                                + "SELECT n, printf('C%010d', n), hex(randomblob(96)), abs(random()) % 1000 FROM seq",
+                        new Object[] { rows + 1, rows + ROWS_PER_BATCH }
+                );
+                rows += ROWS_PER_BATCH;
+            }
+            return rows;
+        }
+        finally {
+            bulk.close();
+        }
+    }
+
+    /**
+     * Return the size of a database, in bytes.
+     *
+     * @param db The database.
+     * @return The number of pages times the page size.
+     */
+    static long fileBytes(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA page_count", null) * DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+    }
+
+    /**
+     * Return the code of a row.
+     *
+     * @param id The row number, from 1 to {@link #ROWS}.
+     * @return The code.
+     */
+    static String code(long id) {
+        return String.format(Locale.US, "C%010d", id);
+    }
+}
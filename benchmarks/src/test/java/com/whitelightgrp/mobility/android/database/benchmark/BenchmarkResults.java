@@ -0,0 +1,92 @@
+package com.whitelightgrp.mobility.android.database.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Summarizes timed samples and writes benchmark results as JSON files to the {@code benchmark.resultsDir} directory.
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+final class BenchmarkResults {
+
+    /**
+     * Not instantiable.
+     */
+    private BenchmarkResults() {
+    }
+
+    /**
+     * Summarize timed samples.
+     *
+     * @param samples The samples, in nanoseconds. Sorted in place.
+     * @return The iteration count, mean, percentiles and maximum, in microseconds.
+     * @throws JSONException Never, as all values are finite.
+     */
+    static JSONObject summarize(long[] samples) throws JSONException {
+        Arrays.sort(samples);
+        long total = 0;
+        for (long sample : samples) {
+            total += sample;
+        }
+        JSONObject summary = new JSONObject();
+        summary.put("iterations", samples.length);
+        summary.put("meanMicros", total / 1e3 / samples.length);
+        summary.put("p50Micros", percentile(samples, 50) / 1e3);
+        summary.put("p90Micros", percentile(samples, 90) / 1e3);
+        summary.put("p99Micros", percentile(samples, 99) / 1e3);
+        summary.put("maxMicros", samples[samples.length - 1] / 1e3);
+        return summary;
+    }
+
+    /**
+     * Return a percentile of sorted samples, by the nearest-rank method.
+     *
+     * @param sorted The samples, in ascending order.
+     * @param percent The percentile, from 1 to 100.
+     * @return The sample at that percentile.
+     */
+    static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Return the directory benchmark files are written to, creating it if needed.
+     *
+     * @return The results directory.
+     */
+    static File getResultsDir() {
+        File dir = new File(System.getProperty("benchmark.resultsDir", "build/benchmark-results"));
+        dir.mkdirs();
+        return dir;
+    }
+
+    /**
+     * Write a result to a file in the results directory, and echo it to standard output.
+     *
+     * @param fileName The file name, such as {@code cold-start-10mb.json}.
+     * @param result The result.
+     * @throws IOException If the file could not be written.
+     * @throws JSONException Never, as all values are finite.
+     */
+    static void write(String fileName, JSONObject result) throws IOException, JSONException {
+        String json = result.toString(2);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(getResultsDir(), fileName)), "UTF-8");
+        try {
+            writer.write(json);
+            writer.write('\n');
+        }
+        finally {
+            writer.close();
+        }
+        System.out.println(json);
+    }
+}
@@ -0,0 +1,211 @@
+package com.whitelightgrp.mobility.android.database.benchmark;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.whitelightgrp.mobility.android.database.BulkMode;
+import com.whitelightgrp.mobility.android.database.SQLiteUtils;
+
+/**
+ * Compares bulk loads into a table of {@code benchmark.rows} rows (500,000 by default) with the connection's default pragmas and inside {@link
+ * BulkMode}. <p> Two loads are timed: inserting every row through a compiled statement, committing every {@code benchmark.batchSize} rows, and
+ * copying the filled table into an empty one with {@link SQLiteUtils#copyRecords(SQLiteDatabase, String, String, String, Object[], int)}. Entering
+ * and leaving bulk mode is part of the time measured. The default profile is that of a stock Android connection, {@code journal_mode} {@code
+ * TRUNCATE} and {@code synchronous} {@code FULL}, rather than the in-memory journal Robolectric opens with; set {@code benchmark.journalMode} and
+ * {@code benchmark.synchronous} to compare against other defaults. Each round builds a new database for each profile, and the order of the profiles
+ * alternates between rounds so that neither always runs on a warmer file cache. Results are written as JSON to {@code bulk-mode.json} in {@code
+ * benchmark.resultsDir}. </p>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, manifest = Config.NONE)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class BulkModeBenchmark {
+
+    /**
+     * Table loaded row by row.
+     */
+    private static final String TABLE = "Items";
+    /**
+     * Table the loaded rows are copied into.
+     */
+    private static final String COPY_TABLE = "ItemsCopy";
+    /**
+     * Columns of both tables.
+     */
+    private static final String COLUMNS = " (id INTEGER PRIMARY KEY, code TEXT NOT NULL, descr TEXT, qty INTEGER, price REAL, payload BLOB)";
+    /**
+     * Names of the profiles, in the order of the first round.
+     */
+    private static final String[] PROFILES = { "default", "bulk" };
+
+    /**
+     * Load the table with each profile in turn and write the timings.
+     *
+     * @throws Exception If a load failed or the results could not be written.
+     */
+    @Test
+    public void measure() throws Exception {
+        int rows = Integer.getInteger("benchmark.rows", 500000);
+        int batchSize = Integer.getInteger("benchmark.batchSize", 1000);
+        int rounds = Integer.getInteger("benchmark.rounds", 3);
+        File dir = new File(System.getProperty("benchmark.fixtureDir", "build/benchmark-fixtures"));
+        dir.mkdirs();
+
+        long[][] insertNanos = new long[PROFILES.length][rounds];
+        long[][] copyNanos = new long[PROFILES.length][rounds];
+        String journalMode = System.getProperty("benchmark.journalMode", "TRUNCATE");
+        String synchronous = System.getProperty("benchmark.synchronous", "FULL");
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < PROFILES.length; i++) {
+                int profile = round % 2 == 0 ? i : PROFILES.length - 1 - i;
+                boolean bulk = profile == 1;
+                File file = new File(dir, "bulk-mode-" + PROFILES[profile] + ".db");
+                SQLiteDatabase.deleteDatabase(file);
+                SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+                try {
+                    DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode=" + journalMode, null);
+                    db.execSQL("PRAGMA synchronous=" + synchronous);
+                    db.execSQL("CREATE TABLE " + TABLE + COLUMNS);
+                    db.execSQL("CREATE UNIQUE INDEX ix_" + TABLE + "_code ON " + TABLE + " (code)");
+                    db.execSQL("CREATE TABLE " + COPY_TABLE + COLUMNS);
+                    db.execSQL("CREATE UNIQUE INDEX ix_" + COPY_TABLE + "_code ON " + COPY_TABLE + " (code)");
+
+                    insertNanos[profile][round] = insert(db, rows, batchSize, bulk);
+                    copyNanos[profile][round] = copy(db, rows, bulk);
+                }
+                finally {
+                    db.close();
+                }
+                SQLiteDatabase.deleteDatabase(file);
+            }
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("benchmark", "bulk-mode");
+        result.put("rows", rows);
+        result.put("batchSize", batchSize);
+        result.put("rounds", rounds);
+        result.put("journalMode", journalMode);
+        result.put("synchronous", synchronous);
+        result.put("insert", compare(insertNanos));
+        result.put("copyRecords", compare(copyNanos));
+        result.put("timestamp", System.currentTimeMillis());
+        BenchmarkResults.write("bulk-mode.json", result);
+    }
+
+    /**
+     * Insert the rows one at a time, committing after each batch.
+     *
+     * @param db The database.
+     * @param rows The number of rows.
+     * @param batchSize The number of rows per transaction.
+     * @param bulk {@code true} to load inside {@link BulkMode}.
+     * @return The time taken, in nanoseconds.
+     */
+    private static long insert(SQLiteDatabase db, int rows, int batchSize, boolean bulk) {
+        byte[] payload = new byte[32];
+        long start = System.nanoTime();
+        BulkMode mode = bulk ? BulkMode.enter(db) : null;
+        try {
+            SQLiteStatement statement = db.compileStatement("INSERT INTO " + TABLE + " (id, code, descr, qty, price, payload) VALUES (?,?,?,?,?,?)");
+            try {
+                for (int id = 1; id <= rows; ) {
+                    db.beginTransaction();
+                    try {
+                        for (int last = Math.min(rows, id + batchSize - 1); id <= last; id++) {
+                            Arrays.fill(payload, (byte) id);
+                            statement.bindLong(1, id);
+                            statement.bindString(2, BenchmarkFixture.code(id));
+                            statement.bindString(3, "Item " + id);
+                            statement.bindLong(4, id % 1000);
+                            statement.bindDouble(5, id / 100.0);
+                            statement.bindBlob(6, payload);
+                            statement.executeInsert();
+                        }
+                        db.setTransactionSuccessful();
+                    }
+                    finally {
+                        db.endTransaction();
+                    }
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            if (mode != null) {
+                mode.close();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Copy the loaded rows into the empty copy table.
+     *
+     * @param db The database.
+     * @param rows The number of rows expected.
+     * @param bulk {@code true} to copy inside {@link BulkMode}.
+     * @return The time taken, in nanoseconds.
+     */
+    private static long copy(SQLiteDatabase db, int rows, boolean bulk) {
+        long start = System.nanoTime();
+        BulkMode mode = bulk ? BulkMode.enter(db) : null;
+        long copied;
+        try {
+            copied = SQLiteUtils.copyRecords(db, COPY_TABLE, TABLE, null, (Object[]) null, SQLiteDatabase.CONFLICT_NONE);
+        }
+        finally {
+            if (mode != null) {
+                mode.close();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (copied != rows) {
+            throw new IllegalStateException("Copied " + copied + " of " + rows + " rows");
+        }
+        return elapsed;
+    }
+
+    /**
+     * Summarize the timings of both profiles.
+     *
+     * @param nanos The timings, in nanoseconds, by profile and round. Sorted in place.
+     * @return The timings of each profile in milliseconds, their medians, and the median default time divided by the median bulk time.
+     * @throws JSONException Never, as all values are finite.
+     */
+    private static JSONObject compare(long[][] nanos) throws JSONException {
+        JSONObject comparison = new JSONObject();
+        long[] medians = new long[PROFILES.length];
+        for (int profile = 0; profile < PROFILES.length; profile++) {
+            JSONArray millis = new JSONArray();
+            for (long sample : nanos[profile]) {
+                millis.put(sample / 1e6);
+            }
+            Arrays.sort(nanos[profile]);
+            medians[profile] = BenchmarkResults.percentile(nanos[profile], 50);
+            JSONObject timings = new JSONObject();
+            timings.put("millis", millis);
+            timings.put("medianMillis", medians[profile] / 1e6);
+            comparison.put(PROFILES[profile], timings);
+        }
+        comparison.put("speedup", (double) medians[0] / medians[1]);
+        return comparison;
+    }
+}
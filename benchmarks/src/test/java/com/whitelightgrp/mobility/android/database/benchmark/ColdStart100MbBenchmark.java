@@ -0,0 +1,16 @@
+package com.whitelightgrp.mobility.android.database.benchmark;
+
+/**
+ * Cold-start latency of a 100 MB database.
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public class ColdStart100MbBenchmark extends ColdStartBenchmark {
+
+    /**
+     * Constructor.
+     */
+    public ColdStart100MbBenchmark() {
+        super(100);
+    }
+}
@@ -0,0 +1,16 @@
+package com.whitelightgrp.mobility.android.database.benchmark;
+
+/**
+ * Cold-start latency of a 10 MB database.
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public class ColdStart10MbBenchmark extends ColdStartBenchmark {
+
+    /**
+     * Constructor.
+     */
+    public ColdStart10MbBenchmark() {
+        super(10);
+    }
+}
@@ -0,0 +1,16 @@
+package com.whitelightgrp.mobility.android.database.benchmark;
+
+/**
+ * Cold-start latency of a 1 GB database.
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public class ColdStart1GbBenchmark extends ColdStartBenchmark {
+
+    /**
+     * Constructor.
+     */
+    public ColdStart1GbBenchmark() {
+        super(1024);
+    }
+}
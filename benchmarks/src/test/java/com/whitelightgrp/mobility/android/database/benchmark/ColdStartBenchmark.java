@@ -0,0 +1,291 @@
+package com.whitelightgrp.mobility.android.database.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.whitelightgrp.mobility.android.database.Migration;
+import com.whitelightgrp.mobility.android.database.OpenHelper;
+import com.whitelightgrp.mobility.android.database.SQLiteUtils;
+
+/**
+ * Measures how long a database of a given size takes to become usable after a cold start, in four separate phases: opening the file, upgrading
+ * the schema, running the first query and answering queries once warm. <p> Each size is a subclass, and the {@code coldStartBenchmark} Gradle task
+ * runs every subclass in a fresh JVM, so that no size benefits from classes loaded, code compiled or pages cached by another. A pristine fixture
+ * database is built on the first run and kept in {@code benchmark.fixtureDir}; each run measures a working copy of it, which is restored from the
+ * pristine file once the run is over, so the next run starts from the same schema version with nothing of the working copy read since. To
+ * measure reads from disk rather than from the operating system's file cache, drop the cache between runs
+ * ({@code sync; echo 3 > /proc/sys/vm/drop_caches} as root). Results are written as JSON, one file per size, to {@code benchmark.resultsDir}.
+ * </p>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, manifest = Config.NONE)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public abstract class ColdStartBenchmark {
+
+    /**
+     * Table holding the fixture rows.
+     */
+    private static final String TABLE = "Items";
+    /**
+     * Schema version of a freshly built fixture; opening it upgrades it to {@code FIXTURE_VERSION + 1}.
+     */
+    private static final int FIXTURE_VERSION = 1;
+    /**
+     * Lookups run before the steady-state lookups are timed.
+     */
+    private static final int WARMUP_ITERATIONS = 500;
+    /**
+     * Steady-state lookups timed.
+     */
+    private static final int MEASURED_ITERATIONS = 5000;
+    /**
+     * Seed of the lookup keys, so that every run reads the same rows.
+     */
+    private static final long SEED = 20140801L;
+
+    /**
+     * Size of the fixture database in MiB.
+     */
+    private final int sizeMb;
+
+    /**
+     * The schema step measured by the benchmark, timed on the same clock as the open.
+     */
+    private static class AddColumnMigration extends Migration {
+
+        /**
+         * Time taken by the step, in nanoseconds.
+         */
+        long elapsedNanos = 0;
+
+        /**
+         * Constructor.
+         */
+        AddColumnMigration() {
+            super(FIXTURE_VERSION + 1, "Add an indexed column");
+        }
+
+        @Override
+        protected void migrate(SQLiteDatabase db) {
+            long start = System.nanoTime();
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN updated INTEGER");
+            db.execSQL("CREATE INDEX ix_" + TABLE + "_qty ON " + TABLE + " (qty)");
+            elapsedNanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sizeMb The size of the fixture database in MiB.
+     */
+    protected ColdStartBenchmark(int sizeMb) {
+        this.sizeMb = sizeMb;
+    }
+
+    /**
+     * Build or reuse the fixture, then open its working copy through {@link OpenHelper} and time each phase.
+     *
+     * @throws Exception If the fixture could not be built or the results could not be written.
+     */
+    @Test
+    public void measure() throws Exception {
+        Assume.assumeTrue("Size " + sizeMb + " MB not selected", isSelected());
+        File dir = new File(System.getProperty("benchmark.fixtureDir", "build/benchmark-fixtures"));
+        File fixture = new File(dir, "cold-start-" + sizeMb + "mb.db");
+        File work = new File(dir, "cold-start-" + sizeMb + "mb-work.db");
+        boolean reused = prepareFixture(fixture);
+        if (!reused || !isPristine(work)) {
+            restore(fixture, work);
+        }
+        long rows = countRows(work);
+
+        Context context = RuntimeEnvironment.getApplication();
+        String name = work.getAbsolutePath();
+        AddColumnMigration migration = new AddColumnMigration();
+        OpenHelper.register(name, FIXTURE_VERSION + 1, migration);
+
+        long start = System.nanoTime();
+        SQLiteDatabase db = OpenHelper.acquireDatabase(context, name);
+        long openAndUpgradeNanos = System.nanoTime() - start;
+        JSONObject result = new JSONObject();
+        try {
+            Random random = new Random(SEED);
+            start = System.nanoTime();
+            long firstValue = SQLiteUtils.queryForLong(db, TABLE, "qty", "code=?", new Object[] { code(random, rows) }, -1);
+            long firstQueryNanos = System.nanoTime() - start;
+
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                SQLiteUtils.queryForLong(db, TABLE, "qty", "code=?", new Object[] { code(random, rows) }, -1);
+            }
+            long[] samples = new long[MEASURED_ITERATIONS];
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                String code = code(random, rows);
+                start = System.nanoTime();
+                SQLiteUtils.queryForLong(db, TABLE, "qty", "code=?", new Object[] { code }, -1);
+                samples[i] = System.nanoTime() - start;
+            }
+
+            result.put("benchmark", "cold-start");
+            result.put("sizeMb", sizeMb);
+            result.put("fileBytes", work.length());
+            result.put("rows", rows);
+            result.put("fixtureReused", reused);
+            result.put("sqliteVersion", SQLiteUtils.getSQLiteVersion(db));
+            result.put("openMillis", (openAndUpgradeNanos - migration.elapsedNanos) / 1e6);
+            result.put("upgradeMillis", migration.elapsedNanos / 1e6);
+            result.put("firstQueryMicros", firstQueryNanos / 1e3);
+            result.put("firstQueryFound", firstValue >= 0);
+            result.put("steadyState", BenchmarkResults.summarize(samples));
+            result.put("timestamp", System.currentTimeMillis());
+        }
+        finally {
+            OpenHelper.releaseDatabase(name);
+        }
+        BenchmarkResults.write("cold-start-" + sizeMb + "mb.json", result);
+
+        // Put the working copy back to the fixture's schema version for the next run
+        restore(fixture, work);
+    }
+
+    /**
+     * Return {@code true} if this size is listed in the {@code benchmark.sizesMb} system property.
+     *
+     * @return {@code true} if the size should be measured.
+     */
+    private boolean isSelected() {
+        for (String size : System.getProperty("benchmark.sizesMb", "10,100,1024").split(",")) {
+            if (size.trim().equals(String.valueOf(sizeMb))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Build the pristine fixture database unless a complete one is already there. The fixture is written directly, not through
+     * {@link OpenHelper}.
+     *
+     * @param fixture The fixture database file.
+     * @return {@code true} if an existing fixture was reused.
+     */
+    private boolean prepareFixture(File fixture) {
+        if (isPristine(fixture) && fixture.length() >= targetBytes()) {
+            return true;
+        }
+        SQLiteDatabase.deleteDatabase(fixture);
+
+        fixture.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(fixture, null);
+        try {
+            BenchmarkFixture.fill(db, targetBytes());
+            db.setVersion(FIXTURE_VERSION);
+        }
+        finally {
+            db.close();
+        }
+        return false;
+    }
+
+    /**
+     * Return {@code true} if a database file exists and is at the fixture's schema version.
+     *
+     * @param file The database file.
+     * @return {@code true} if the file can be measured.
+     */
+    private static boolean isPristine(File file) {
+        if (!file.exists()) {
+            return false;
+        }
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            return db.getVersion() == FIXTURE_VERSION;
+        }
+        finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Replace the working copy with the pristine fixture.
+     *
+     * @param fixture The pristine fixture database file.
+     * @param work The working copy. Must not be open.
+     * @throws IOException If the file could not be copied.
+     */
+    private static void restore(File fixture, File work) throws IOException {
+        SQLiteDatabase.deleteDatabase(work);
+        FileChannel in = new FileInputStream(fixture).getChannel();
+        try {
+            FileChannel out = new FileOutputStream(work).getChannel();
+            try {
+                long position = 0;
+                long size = in.size();
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Return the fixture size to reach, in bytes.
+     *
+     * @return The size in bytes.
+     */
+    private long targetBytes() {
+        return sizeMb * 1024L * 1024L;
+    }
+
+    /**
+     * Count the rows of a fixture, without keeping it open.
+     *
+     * @param file The database file.
+     * @return The number of rows, which are numbered from 1.
+     */
+    private static long countRows(File file) {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            return DatabaseUtils.longForQuery(db, "SELECT max(id) FROM " + TABLE, null);
+        }
+        finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Return the code of a random row.
+     *
+     * @param random The source of row numbers.
+     * @param rows The number of rows.
+     * @return The code.
+     */
+    private static String code(Random random, long rows) {
+        return BenchmarkFixture.code(1 + (long) (random.nextDouble() * rows));
+    }
+}
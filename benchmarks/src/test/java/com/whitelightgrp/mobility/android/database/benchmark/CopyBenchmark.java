@@ -0,0 +1,137 @@
+package com.whitelightgrp.mobility.android.database.benchmark;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.whitelightgrp.mobility.android.database.SQLiteUtils;
+import com.whitelightgrp.mobility.android.database.StatementCache;
+import com.whitelightgrp.mobility.android.database.TableTimings;
+
+/**
+ * Microbenchmarks of the {@link SQLiteUtils} table copy helpers: the three {@code copyRecords} overloads, {@code copyRecordsChunked} and
+ * {@code rebuildTable}, each moving every fixture row (or half of them, where a filter is given) per operation. The destination tables are
+ * emptied before every operation, outside the measured time, so that each one inserts the same rows into an empty table.
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+@State(Scope.Thread)
+public class CopyBenchmark {
+
+    /**
+     * Destination with the fixture's schema.
+     */
+    private static final String COPY_TABLE = "ItemsCopy";
+    /**
+     * Destination with a different schema, filled through a column map.
+     */
+    private static final String ARCHIVE_TABLE = "ItemsArchive";
+    /**
+     * Schema the fixture table is rebuilt with, the one it already has.
+     */
+    private static final String CREATE_SQL = "CREATE TABLE " + BenchmarkFixture.TABLE
+            + " (id INTEGER PRIMARY KEY, code TEXT NOT NULL, descr TEXT, qty INTEGER, price REAL, payload BLOB)";
+    /**
+     * Filter selecting half of the fixture rows.
+     */
+    private static final String HALF = "qty<?";
+    /**
+     * Rows per chunk of {@code copyRecordsChunked}.
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    /**
+     * The fixture database.
+     */
+    private SQLiteDatabase db;
+    /**
+     * Archive columns filled from expressions over the fixture row.
+     */
+    private Map<String, String> columnMap;
+    /**
+     * Value of the archive column with no source.
+     */
+    private Map<String, Object> defaultValues;
+
+    /**
+     * Create the fixture and the destination tables.
+     *
+     * @throws IOException If the fixture could not be created.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        db = BenchmarkFixture.create();
+        db.execSQL("CREATE TABLE " + COPY_TABLE + " (id INTEGER PRIMARY KEY, code TEXT NOT NULL, descr TEXT, qty INTEGER, price REAL, payload BLOB)");
+        db.execSQL("CREATE TABLE " + ARCHIVE_TABLE + " (id INTEGER PRIMARY KEY, code TEXT NOT NULL, label TEXT, total REAL, archived INTEGER)");
+        columnMap = new HashMap<String, String>();
+        columnMap.put("id", "id");
+        columnMap.put("code", "code");
+        columnMap.put("label", "upper(descr)");
+        columnMap.put("total", "qty * price");
+        defaultValues = new HashMap<String, Object>();
+        defaultValues.put("archived", 1);
+    }
+
+    /**
+     * Empty the destination tables.
+     */
+    @Setup(Level.Invocation)
+    public void clear() {
+        db.execSQL("DELETE FROM " + COPY_TABLE);
+        db.execSQL("DELETE FROM " + ARCHIVE_TABLE);
+    }
+
+    /**
+     * Close the fixture.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        StatementCache.remove(db);
+        db.close();
+    }
+
+    @Benchmark
+    public long copyRecordsStringArgs() {
+        return SQLiteUtils.copyRecords(db, COPY_TABLE, BenchmarkFixture.TABLE, HALF, new String[] { "500" }, SQLiteDatabase.CONFLICT_NONE);
+    }
+
+    @Benchmark
+    public long copyRecordsObjectArgs() {
+        return SQLiteUtils.copyRecords(db, COPY_TABLE, BenchmarkFixture.TABLE, HALF, new Object[] { 500 }, SQLiteDatabase.CONFLICT_NONE);
+    }
+
+    @Benchmark
+    public long copyRecordsColumnMap() {
+        return SQLiteUtils.copyRecords(db, ARCHIVE_TABLE, BenchmarkFixture.TABLE, columnMap, defaultValues, null, null, SQLiteDatabase.CONFLICT_NONE);
+    }
+
+    @Benchmark
+    public long copyRecordsChunked() {
+        return SQLiteUtils.copyRecordsChunked(
+                db,
+                COPY_TABLE,
+                BenchmarkFixture.TABLE,
+                "id",
+                null,
+                null,
+                SQLiteDatabase.CONFLICT_NONE,
+                CHUNK_SIZE,
+                Long.MIN_VALUE,
+                null
+        );
+    }
+
+    @Benchmark
+    public TableTimings rebuildTable() {
+        return SQLiteUtils.rebuildTable(db, BenchmarkFixture.TABLE, CREATE_SQL, null, null, null);
+    }
+}
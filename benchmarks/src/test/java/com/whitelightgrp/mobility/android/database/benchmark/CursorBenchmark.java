@@ -0,0 +1,163 @@
+package com.whitelightgrp.mobility.android.database.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.whitelightgrp.mobility.android.database.SQLiteUtils;
+
+/**
+ * Microbenchmarks of the {@link SQLiteUtils} cursor accessors, each taking a column index next to the same accessor taking a column name, with
+ * the plain {@link Cursor} getter as the baseline. The cursor moves to the next row before every read, wrapping around at the end of its window,
+ * so that the reads are not served from a single cached row.
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+@State(Scope.Thread)
+public class CursorBenchmark {
+
+    /**
+     * The fixture database.
+     */
+    private SQLiteDatabase db;
+    /**
+     * Cursor over every fixture row.
+     */
+    private Cursor cursor;
+    /**
+     * Index of the {@code qty} column.
+     */
+    private int qtyIndex;
+    /**
+     * Index of the {@code descr} column.
+     */
+    private int descrIndex;
+    /**
+     * Index of the {@code payload} column.
+     */
+    private int payloadIndex;
+
+    /**
+     * Create the fixture and fill the cursor window.
+     *
+     * @throws IOException If the fixture could not be created.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        db = BenchmarkFixture.create();
+        cursor = db.rawQuery("SELECT id, code, descr, qty, price, payload FROM " + BenchmarkFixture.TABLE + " ORDER BY id", null);
+        cursor.moveToFirst();
+        qtyIndex = cursor.getColumnIndex("qty");
+        descrIndex = cursor.getColumnIndex("descr");
+        payloadIndex = cursor.getColumnIndex("payload");
+    }
+
+    /**
+     * Close the cursor and the fixture.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cursor.close();
+        db.close();
+    }
+
+    /**
+     * Move to the next row, back to the first after the last.
+     *
+     * @return The cursor.
+     */
+    private Cursor advance() {
+        if (!cursor.moveToNext()) {
+            cursor.moveToFirst();
+        }
+        return cursor;
+    }
+
+    @Benchmark
+    public long cursorGetLong() {
+        return advance().getLong(qtyIndex);
+    }
+
+    @Benchmark
+    public Long safeGetLongByIndex() {
+        return SQLiteUtils.safeGetLongFromCursor(advance(), qtyIndex);
+    }
+
+    @Benchmark
+    public Long safeGetLongByName() {
+        return SQLiteUtils.safeGetLongFromCursor(advance(), "qty");
+    }
+
+    @Benchmark
+    public long safeGetLongByIndexWithDefault() {
+        return SQLiteUtils.safeGetLongFromCursor(advance(), qtyIndex, -1);
+    }
+
+    @Benchmark
+    public long safeGetLongByNameWithDefault() {
+        return SQLiteUtils.safeGetLongFromCursor(advance(), "qty", -1);
+    }
+
+    @Benchmark
+    public Integer safeGetIntByIndex() {
+        return SQLiteUtils.safeGetIntFromCursor(advance(), qtyIndex);
+    }
+
+    @Benchmark
+    public Integer safeGetIntByName() {
+        return SQLiteUtils.safeGetIntFromCursor(advance(), "qty");
+    }
+
+    @Benchmark
+    public int safeGetIntByIndexWithDefault() {
+        return SQLiteUtils.safeGetIntFromCursor(advance(), qtyIndex, -1);
+    }
+
+    @Benchmark
+    public int safeGetIntByNameWithDefault() {
+        return SQLiteUtils.safeGetIntFromCursor(advance(), "qty", -1);
+    }
+
+    @Benchmark
+    public String cursorGetString() {
+        return advance().getString(descrIndex);
+    }
+
+    @Benchmark
+    public String safeGetStringByIndex() {
+        return SQLiteUtils.safeGetStringFromCursor(advance(), descrIndex);
+    }
+
+    @Benchmark
+    public String safeGetStringByName() {
+        return SQLiteUtils.safeGetStringFromCursor(advance(), "descr");
+    }
+
+    @Benchmark
+    public String safeGetStringByIndexWithDefault() {
+        return SQLiteUtils.safeGetStringFromCursor(advance(), descrIndex, "");
+    }
+
+    @Benchmark
+    public String safeGetStringByNameWithDefault() {
+        return SQLiteUtils.safeGetStringFromCursor(advance(), "descr", "");
+    }
+
+    @Benchmark
+    public byte[] cursorGetBlob() {
+        return advance().getBlob(payloadIndex);
+    }
+
+    @Benchmark
+    public byte[] safeGetByteArrayByIndex() {
+        return SQLiteUtils.safeGetByteArrayFromCursor(advance(), payloadIndex);
+    }
+}
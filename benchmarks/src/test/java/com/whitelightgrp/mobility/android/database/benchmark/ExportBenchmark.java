@@ -0,0 +1,170 @@
+package com.whitelightgrp.mobility.android.database.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.whitelightgrp.mobility.android.database.Migration;
+import com.whitelightgrp.mobility.android.database.OpenHelper;
+import com.whitelightgrp.mobility.android.database.SQLiteUtils;
+import com.whitelightgrp.mobility.android.database.TableTimings;
+
+/**
+ * Compares the wall-clock time of {@link SQLiteUtils#exportTables(Context, String, java.util.Collection, String)} with that of
+ * {@link SQLiteUtils#exportTablesParallel(Context, String, java.util.Collection, String, int)} on {@code benchmark.tables} independent tables of
+ * {@code benchmark.rows} rows each (4 of 250,000 by default). <p> The parallel export uses {@code benchmark.threads} workers, by default one per
+ * table up to the number of available processors, which the results record since the speedup depends on them. Every export starts from a missing
+ * target file, and the order of the two paths alternates between rounds. The source database is built on the first run through {@link OpenHelper}
+ * and kept in {@code benchmark.fixtureDir}. Results are written as JSON to {@code export.json} in {@code benchmark.resultsDir}. </p>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, manifest = Config.NONE)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class ExportBenchmark {
+
+    /**
+     * Names of the export paths, in the order of the first round.
+     */
+    private static final String[] MODES = { "serial", "parallel" };
+
+    /**
+     * Builds the source tables when the source database is created.
+     */
+    private static class CreateTablesMigration extends Migration {
+
+        /**
+         * The tables to create.
+         */
+        private final List<String> tableNames;
+        /**
+         * Rows per table.
+         */
+        private final int rows;
+
+        /**
+         * Constructor.
+         *
+         * @param tableNames The tables to create.
+         * @param rows The number of rows per table.
+         */
+        CreateTablesMigration(List<String> tableNames, int rows) {
+            super(1, "Create the export tables");
+            this.tableNames = tableNames;
+            this.rows = rows;
+        }
+
+        @Override
+        protected void migrate(SQLiteDatabase db) {
+            for (String table : tableNames) {
+                db.execSQL("CREATE TABLE " + table + " (id INTEGER PRIMARY KEY, code TEXT NOT NULL, descr TEXT, qty INTEGER, price REAL)");
+                db.execSQL("CREATE UNIQUE INDEX ix_" + table + "_code ON " + table + " (code)");
+                db.execSQL("CREATE INDEX ix_" + table + "_qty ON " + table + " (qty)");
+                db.execSQL(
+                        "WITH RECURSIVE seq(n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM seq WHERE n < " + rows + ") "
+                                + "INSERT INTO " + table + " (id, code, descr, qty, price) "
+                                + "SELECT n, printf('C%010d', n), hex(randomblob(48)), abs(random()) % 1000, n / 100.0 FROM seq"
+                );
+            }
+        }
+    }
+
+    /**
+     * Export the tables with each path in turn and write the timings.
+     *
+     * @throws Exception If an export failed or the results could not be written.
+     */
+    @Test
+    public void measure() throws Exception {
+        int tables = Integer.getInteger("benchmark.tables", 4);
+        int rows = Integer.getInteger("benchmark.rows", 250000);
+        int processors = Runtime.getRuntime().availableProcessors();
+        int threads = Integer.getInteger("benchmark.threads", Math.min(tables, processors));
+        int rounds = Integer.getInteger("benchmark.rounds", 3);
+        File dir = new File(System.getProperty("benchmark.fixtureDir", "build/benchmark-fixtures"));
+        dir.mkdirs();
+
+        List<String> tableNames = new ArrayList<String>();
+        for (int i = 1; i <= tables; i++) {
+            tableNames.add("Items" + i);
+        }
+        Context context = RuntimeEnvironment.getApplication();
+        String name = new File(dir, "export-" + tables + "x" + rows + ".db").getAbsolutePath();
+        OpenHelper.register(name, 1, new CreateTablesMigration(tableNames, rows));
+        OpenHelper.getDatabase(context, name);
+        String target = new File(dir, "export-target.db").getAbsolutePath();
+
+        long[][] nanos = new long[MODES.length][rounds];
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < MODES.length; i++) {
+                int mode = round % 2 == 0 ? i : MODES.length - 1 - i;
+                SQLiteDatabase.deleteDatabase(new File(target));
+                long start = System.nanoTime();
+                Map<String, TableTimings> timings = mode == 0
+                        ? SQLiteUtils.exportTables(context, name, tableNames, target)
+                        : SQLiteUtils.exportTablesParallel(context, name, tableNames, target, threads);
+                nanos[mode][round] = System.nanoTime() - start;
+                check(MODES[mode], timings, tables, rows);
+            }
+        }
+        SQLiteDatabase.deleteDatabase(new File(target));
+
+        JSONObject result = new JSONObject();
+        result.put("benchmark", "export");
+        result.put("tables", tables);
+        result.put("rowsPerTable", rows);
+        result.put("threads", threads);
+        result.put("availableProcessors", processors);
+        result.put("rounds", rounds);
+        long[] medians = new long[MODES.length];
+        for (int mode = 0; mode < MODES.length; mode++) {
+            JSONArray millis = new JSONArray();
+            for (long sample : nanos[mode]) {
+                millis.put(sample / 1e6);
+            }
+            Arrays.sort(nanos[mode]);
+            medians[mode] = BenchmarkResults.percentile(nanos[mode], 50);
+            JSONObject timings = new JSONObject();
+            timings.put("millis", millis);
+            timings.put("medianMillis", medians[mode] / 1e6);
+            result.put(MODES[mode], timings);
+        }
+        result.put("speedup", (double) medians[0] / medians[1]);
+        result.put("timestamp", System.currentTimeMillis());
+        BenchmarkResults.write("export.json", result);
+    }
+
+    /**
+     * Make sure an export copied every row of every table.
+     *
+     * @param mode The name of the export path.
+     * @param timings The timings it returned.
+     * @param tables The number of tables expected.
+     * @param rows The number of rows per table expected.
+     */
+    private static void check(String mode, Map<String, TableTimings> timings, int tables, int rows) {
+        if (timings == null || timings.size() != tables) {
+            throw new IllegalStateException("The " + mode + " export failed");
+        }
+        for (TableTimings table : timings.values()) {
+            if (table.getRowCount() != rows) {
+                throw new IllegalStateException("The " + mode + " export copied " + table.getRowCount() + " rows of " + table.getTableName());
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.whitelightgrp.mobility.android.database.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+/**
+ * Runs the JMH microbenchmarks ({@link QueryBenchmark}, {@link CursorBenchmark} and {@link CopyBenchmark}) inside Robolectric, which provides the
+ * native SQLite the Android classes need on the desktop JVM. <p> JMH runs in this JVM rather than forking its own, because a forked JVM would not
+ * have Robolectric's class loader. Every benchmark is measured both for throughput and for sampled latency, whose percentiles JMH reports, and the GC
+ * profiler reports the allocation rate and bytes allocated per operation. Results are written as JSON to {@code jmh.json} in {@code
+ * benchmark.resultsDir}. The {@code jmh.include} system property selects benchmarks by regular expression, and {@code jmh.warmupIterations} and
+ * {@code jmh.iterations} set the iteration counts. </p>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, manifest = Config.NONE)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class JmhBenchmark {
+
+    /**
+     * Run the selected microbenchmarks.
+     *
+     * @throws RunnerException If JMH failed.
+     */
+    @Test
+    public void run() throws RunnerException {
+        File dir = new File(System.getProperty("benchmark.resultsDir", "build/benchmark-results"));
+        dir.mkdirs();
+        String include = System.getProperty("jmh.include");
+        if (include == null || include.length() == 0) {
+            include = ".*\\.(" + QueryBenchmark.class.getSimpleName() + "|" + CursorBenchmark.class.getSimpleName() + "|"
+                    + CopyBenchmark.class.getSimpleName() + ")\\..*";
+        }
+        new Runner(new OptionsBuilder()
+                .include(include)
+                .forks(0)
+                .mode(Mode.Throughput)
+                .mode(Mode.SampleTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .warmupIterations(Integer.getInteger("jmh.warmupIterations", 3))
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(Integer.getInteger("jmh.iterations", 5))
+                .measurementTime(TimeValue.seconds(1))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(dir, "jmh.json").getPath())
+                .build()
+        ).run();
+    }
+}
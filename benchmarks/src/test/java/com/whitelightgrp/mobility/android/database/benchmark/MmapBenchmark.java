@@ -0,0 +1,178 @@
+package com.whitelightgrp.mobility.android.database.benchmark;
+
+import java.io.File;
+import java.util.Random;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.whitelightgrp.mobility.android.database.OpenHelper;
+import com.whitelightgrp.mobility.android.database.PragmaProfile;
+import com.whitelightgrp.mobility.android.database.SQLiteUtils;
+
+/**
+ * Compares point-lookup latency on a database of {@code benchmark.sizeMb} MiB (384 by default) with memory-mapped I/O off and with {@code mmap_size}
+ * at {@link PragmaProfile#MAX_MMAP_SIZE}, on the read path the library offers for queries. <p> The fixture is opened through {@link OpenHelper} with
+ * the {@link PragmaProfile#THROUGHPUT} profile and write-ahead logging, and every lookup runs on the connection checked out with {@link
+ * OpenHelper#acquireReadDatabase(Context, String)}. Each run sets the size with {@link OpenHelper#setMmapSize(Context, String, long)}, which the
+ * pooled connection picks up as it is checked out, warms up and then times lookups of random rows. The page cache holds only a small part of the
+ * file, so most lookups read pages from the file: through {@code read()} calls with mapping off, or straight from the mapping with it on, for the
+ * part of the file the mapping covers. A discarded warm-up run comes first. The fixture is built on the first run and kept in {@code
+ * benchmark.fixtureDir}, so the operating system's file cache is usually warm; drop it between runs to include reads from disk. Results, with the
+ * {@code mmap_size} reported by the primary and the pooled connection, are written as JSON to {@code mmap.json} in {@code benchmark.resultsDir}. </p>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, manifest = Config.NONE)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class MmapBenchmark {
+
+    /**
+     * Schema version marking a completely built fixture.
+     */
+    private static final int FIXTURE_VERSION = 1;
+    /**
+     * Lookups run before the lookups are timed.
+     */
+    private static final int WARMUP_ITERATIONS = 5000;
+    /**
+     * Lookups timed per run.
+     */
+    private static final int MEASURED_ITERATIONS = 50000;
+    /**
+     * Seed of the lookup keys, so that both runs read the same rows.
+     */
+    private static final long SEED = 20140801L;
+
+    /**
+     * Build or reuse the fixture, then time lookups with memory mapping off and on.
+     *
+     * @throws Exception If the fixture could not be built or the results could not be written.
+     */
+    @Test
+    public void measure() throws Exception {
+        int sizeMb = Integer.getInteger("benchmark.sizeMb", 384);
+        File dir = new File(System.getProperty("benchmark.fixtureDir", "build/benchmark-fixtures"));
+        File file = new File(dir, "mmap-" + sizeMb + "mb.db");
+        boolean reused = prepareFixture(file, sizeMb * 1024L * 1024L);
+        Context context = RuntimeEnvironment.getApplication();
+        String name = file.getAbsolutePath();
+        OpenHelper.register(name, FIXTURE_VERSION);
+        OpenHelper.setPragmaProfile(context, name, PragmaProfile.THROUGHPUT);
+        if (!OpenHelper.enableWriteAheadLogging(context, name, 1)) {
+            throw new IllegalStateException("Could not enable write-ahead logging");
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("benchmark", "mmap");
+        result.put("sizeMb", sizeMb);
+        result.put("fileBytes", file.length());
+        result.put("fixtureReused", reused);
+        // A discarded run first, so that the run measured first does not also pay for class loading and compilation
+        lookups(context, name, PragmaProfile.THROUGHPUT.getMmapSize());
+        result.put("mmapOff", lookups(context, name, 0));
+        result.put("mmapOn", lookups(context, name, PragmaProfile.MAX_MMAP_SIZE));
+        result.put("timestamp", System.currentTimeMillis());
+        BenchmarkResults.write("mmap.json", result);
+    }
+
+    /**
+     * Build the fixture database unless a complete one is already there.
+     *
+     * @param file The fixture database file.
+     * @param bytes The file size to reach, in bytes.
+     * @return {@code true} if an existing fixture was reused.
+     */
+    private static boolean prepareFixture(File file, long bytes) {
+        if (file.exists() && file.length() >= bytes) {
+            // Opened read-write, since a fixture left in write-ahead logging mode may have no shared-memory file yet
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+            try {
+                if (db.getVersion() == FIXTURE_VERSION) {
+                    return true;
+                }
+            }
+            finally {
+                db.close();
+            }
+        }
+        SQLiteDatabase.deleteDatabase(file);
+
+        file.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        try {
+            BenchmarkFixture.fill(db, bytes);
+            db.setVersion(FIXTURE_VERSION);
+        }
+        finally {
+            db.close();
+        }
+        return false;
+    }
+
+    /**
+     * Set the memory-mapping size of the fixture and time lookups of random rows on a pooled read connection.
+     *
+     * @param context The {@link Context} used to open the fixture.
+     * @param name The registered name of the fixture.
+     * @param bytes The maximum number of bytes to map, 0 to disable memory-mapped I/O.
+     * @return The {@code mmap_size} each connection reported and the latency summary.
+     * @throws Exception If the size could not be set or the summary could not be built.
+     */
+    private static JSONObject lookups(Context context, String name, long bytes) throws Exception {
+        long primaryMmapSize = OpenHelper.setMmapSize(context, name, bytes);
+        if (primaryMmapSize < 0) {
+            throw new IllegalStateException("Could not set mmap_size " + bytes);
+        }
+        SQLiteDatabase db = OpenHelper.acquireReadDatabase(context, name);
+        try {
+            long rows = DatabaseUtils.longForQuery(db, "SELECT max(id) FROM " + BenchmarkFixture.TABLE, null);
+            Random random = new Random(SEED);
+            long found = 0;
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                SQLiteUtils.queryForLong(db, BenchmarkFixture.TABLE, "qty", "code=?", new Object[] { code(random, rows) }, -1);
+            }
+            long[] samples = new long[MEASURED_ITERATIONS];
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                String code = code(random, rows);
+                long start = System.nanoTime();
+                long qty = SQLiteUtils.queryForLong(db, BenchmarkFixture.TABLE, "qty", "code=?", new Object[] { code }, -1);
+                samples[i] = System.nanoTime() - start;
+                if (qty >= 0) {
+                    found++;
+                }
+            }
+
+            JSONObject run = new JSONObject();
+            run.put("primaryMmapSize", primaryMmapSize);
+            run.put("mmapSize", PragmaProfile.read(db).getMmapSize());
+            run.put("found", found);
+            run.put("lookups", BenchmarkResults.summarize(samples));
+            return run;
+        }
+        finally {
+            OpenHelper.releaseReadDatabase(db);
+        }
+    }
+
+    /**
+     * Return the code of a random row.
+     *
+     * @param random The source of row numbers.
+     * @param rows The number of rows.
+     * @return The code.
+     */
+    private static String code(Random random, long rows) {
+        return BenchmarkFixture.code(1 + (long) (random.nextDouble() * rows));
+    }
+}
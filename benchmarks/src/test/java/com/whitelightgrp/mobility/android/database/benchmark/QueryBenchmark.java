@@ -0,0 +1,216 @@
+package com.whitelightgrp.mobility.android.database.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.whitelightgrp.mobility.android.database.SQLiteUtils;
+import com.whitelightgrp.mobility.android.database.StatementCache;
+
+/**
+ * Microbenchmarks of the {@link SQLiteUtils} query helpers: the scalar lookups, with {@code String[]} and {@code Object[]} arguments, next to a
+ * hand-compiled {@link SQLiteStatement} and {@link DatabaseUtils#longForQuery(SQLiteDatabase, String, String[])} as baselines, plus the raw
+ * query, statement execution and metadata helpers. Every lookup is by a key spread over the whole table, so that each one walks the index.
+ * {@code precompileScalarQuery} is measured both for a query already in the {@link StatementCache} and for one that never is, since the selections
+ * cycled through outnumber the cache's capacity.
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+@State(Scope.Thread)
+public class QueryBenchmark {
+
+    /**
+     * Number of distinct keys cycled through.
+     */
+    private static final int KEYS = 1024;
+    /**
+     * Selection used by every lookup.
+     */
+    private static final String SELECTION = "code=?";
+
+    /**
+     * The fixture database.
+     */
+    private SQLiteDatabase db;
+    /**
+     * Hand-compiled lookup, as the baseline for the scalar helpers.
+     */
+    private SQLiteStatement statement;
+    /**
+     * Lookup keys, bound as strings.
+     */
+    private String[][] stringArgs;
+    /**
+     * The same keys, bound by type.
+     */
+    private Object[][] objectArgs;
+    /**
+     * Index of the next key.
+     */
+    private int next = 0;
+
+    /**
+     * Create the fixture and the lookup keys.
+     *
+     * @throws IOException If the fixture could not be created.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        db = BenchmarkFixture.create();
+        statement = db.compileStatement("SELECT qty FROM " + BenchmarkFixture.TABLE + " WHERE " + SELECTION + " LIMIT 1");
+        Random random = new Random(KEYS);
+        stringArgs = new String[KEYS][];
+        objectArgs = new Object[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            String code = BenchmarkFixture.code(1 + random.nextInt(BenchmarkFixture.ROWS));
+            stringArgs[i] = new String[] { code };
+            objectArgs[i] = new Object[] { code };
+        }
+        // Compile the helpers' statements up front, so that the first iterations do not measure compilation
+        SQLiteUtils.precompileScalarQuery(db, BenchmarkFixture.TABLE, "qty", SELECTION);
+        SQLiteUtils.precompileScalarQuery(db, BenchmarkFixture.TABLE, "descr", SELECTION);
+    }
+
+    /**
+     * Close the fixture.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        statement.close();
+        StatementCache.remove(db);
+        db.close();
+    }
+
+    /**
+     * Return the index of the next key.
+     *
+     * @return The index.
+     */
+    private int nextKey() {
+        next = (next + 1) & (KEYS - 1);
+        return next;
+    }
+
+    @Benchmark
+    public long rawStatement() {
+        statement.bindString(1, stringArgs[nextKey()][0]);
+        return statement.simpleQueryForLong();
+    }
+
+    @Benchmark
+    public long databaseUtilsLongForQuery() {
+        return DatabaseUtils.longForQuery(db, "SELECT qty FROM " + BenchmarkFixture.TABLE + " WHERE " + SELECTION + " LIMIT 1",
+                stringArgs[nextKey()]);
+    }
+
+    @Benchmark
+    public Long safeQueryForLongStringArgs() {
+        return SQLiteUtils.safeQueryForLong(db, BenchmarkFixture.TABLE, "qty", SELECTION, stringArgs[nextKey()]);
+    }
+
+    @Benchmark
+    public Long safeQueryForLongObjectArgs() {
+        return SQLiteUtils.safeQueryForLong(db, BenchmarkFixture.TABLE, "qty", SELECTION, objectArgs[nextKey()]);
+    }
+
+    @Benchmark
+    public long queryForLongStringArgs() {
+        return SQLiteUtils.queryForLong(db, BenchmarkFixture.TABLE, "qty", SELECTION, stringArgs[nextKey()], -1);
+    }
+
+    @Benchmark
+    public long queryForLongObjectArgs() {
+        return SQLiteUtils.queryForLong(db, BenchmarkFixture.TABLE, "qty", SELECTION, objectArgs[nextKey()], -1);
+    }
+
+    @Benchmark
+    public Integer safeQueryForInt() {
+        return SQLiteUtils.safeQueryForInt(db, BenchmarkFixture.TABLE, "qty", SELECTION, objectArgs[nextKey()]);
+    }
+
+    @Benchmark
+    public int queryForInt() {
+        return SQLiteUtils.queryForInt(db, BenchmarkFixture.TABLE, "qty", SELECTION, objectArgs[nextKey()], -1);
+    }
+
+    @Benchmark
+    public String safeQueryForString() {
+        return SQLiteUtils.safeQueryForString(db, BenchmarkFixture.TABLE, "descr", SELECTION, objectArgs[nextKey()]);
+    }
+
+    @Benchmark
+    public byte[] safeQueryForByteArray() {
+        return SQLiteUtils.safeQueryForByteArray(db, BenchmarkFixture.TABLE, "payload", SELECTION, objectArgs[nextKey()]);
+    }
+
+    @Benchmark
+    public long safeQueryForCount() {
+        return SQLiteUtils.safeQueryForCount(db, BenchmarkFixture.TABLE, "qty<?", new Object[] { nextKey() });
+    }
+
+    @Benchmark
+    public void rawQuery(Blackhole blackhole) {
+        Cursor cursor = SQLiteUtils.rawQuery(db, "SELECT id, qty FROM " + BenchmarkFixture.TABLE + " WHERE " + SELECTION, objectArgs[nextKey()]);
+        try {
+            while (cursor.moveToNext()) {
+                blackhole.consume(cursor.getLong(1));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    @Benchmark
+    public boolean safeExecSql() {
+        return SQLiteUtils.safeExecSql(db, "UPDATE " + BenchmarkFixture.TABLE + " SET qty=qty WHERE " + SELECTION, objectArgs[nextKey()]);
+    }
+
+    @Benchmark
+    public ArrayList<String> listTables() {
+        return SQLiteUtils.listTables(db);
+    }
+
+    @Benchmark
+    public boolean isSQLiteVersionAtLeast() {
+        return SQLiteUtils.isSQLiteVersionAtLeast(db, 3, 24, 0);
+    }
+
+    @Benchmark
+    public String getSQLiteVersion() {
+        return SQLiteUtils.getSQLiteVersion(db);
+    }
+
+    @Benchmark
+    public String sqliteVersionQuery() {
+        return DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null);
+    }
+
+    @Benchmark
+    public boolean precompileScalarQueryCached() {
+        return SQLiteUtils.precompileScalarQuery(db, BenchmarkFixture.TABLE, "qty", SELECTION);
+    }
+
+    @Benchmark
+    public boolean precompileScalarQueryUncached() {
+        return SQLiteUtils.precompileScalarQuery(db, BenchmarkFixture.TABLE, "qty", "qty<" + nextKey());
+    }
+
+    @Benchmark
+    public String humanReadableByteCount() {
+        return SQLiteUtils.humanReadableByteCount(1536L << nextKey() % 40, false);
+    }
+}
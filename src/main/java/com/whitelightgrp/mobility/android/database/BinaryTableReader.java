@@ -0,0 +1,357 @@
+package com.whitelightgrp.mobility.android.database;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a table file written by {@link BinaryTableWriter}, one row at a time. <p> An uncompressed file may be memory-mapped instead of read
+ * through a buffer, in which case values are decoded straight out of the mapping rather than first being copied into a read buffer. The file is
+ * mapped one window of {@link #MAP_WINDOW} bytes at a time, so files of any size can be mapped, and reading continues through a buffer if a
+ * window cannot be mapped. </p>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public class BinaryTableReader implements Closeable {
+
+    /**
+     * Number of bytes of the file mapped at a time.
+     */
+    public static final int MAP_WINDOW = 64 * 1024 * 1024;
+
+    /**
+     * The file being read.
+     */
+    private final FileChannel channel;
+    /**
+     * Decoded bytes waiting to be consumed, in read mode. Either a refillable buffer or a mapping of a window of the file.
+     */
+    private ByteBuffer buffer;
+    /**
+     * {@code true} if {@link #buffer} maps a window of the file.
+     */
+    private boolean mapped = false;
+    /**
+     * File offset of the mapped window.
+     */
+    private long windowStart = 0;
+    /**
+     * Decompressor for the body, or {@code null} if the body is not compressed.
+     */
+    private Inflater inflater = null;
+    /**
+     * Compressed bytes read from the file, fed to the decompressor.
+     */
+    private byte[] compressed = null;
+    /**
+     * The exported table's name.
+     */
+    private final String tableName;
+    /**
+     * The exported table's {@code CREATE TABLE} statement, or {@code null} if unknown.
+     */
+    private final String createSql;
+    /**
+     * The names of the columns in each row.
+     */
+    private final String[] columnNames;
+    /**
+     * {@code true} once the end marker has been read.
+     */
+    private boolean finished = false;
+
+    /**
+     * Open a file and read its header.
+     *
+     * @param file The file to read.
+     * @throws IOException If the file could not be read or is not a table file.
+     */
+    public BinaryTableReader(File file) throws IOException {
+        this(file, false);
+    }
+
+    /**
+     * Open a file and read its header.
+     *
+     * @param file The file to read.
+     * @param map {@code true} to memory-map the file. A compressed file is always read through a buffer.
+     * @throws IOException If the file could not be read or is not a table file.
+     */
+    public BinaryTableReader(File file, boolean map) throws IOException {
+        channel = new FileInputStream(file).getChannel();
+        if (!map || !mapWindow(0, 0)) {
+            buffer = ByteBuffer.allocate(BinaryTableWriter.BUFFER_SIZE);
+            buffer.flip();
+        }
+        try {
+            require(6);
+            if (buffer.getInt() != BinaryTableWriter.MAGIC) {
+                throw new IOException("Not a table file: " + file);
+            }
+            if (buffer.get() != BinaryTableWriter.VERSION) {
+                throw new IOException("Unsupported table file version: " + file);
+            }
+            boolean deflate = (buffer.get() & BinaryTableWriter.FLAG_DEFLATE) != 0;
+            tableName = getString();
+            String sql = getString();
+            createSql = sql.length() == 0 ? null : sql;
+            require(4);
+            columnNames = new String[buffer.getInt()];
+            for (int i = 0; i < columnNames.length; i++) {
+                columnNames[i] = getString();
+            }
+            if (deflate) {
+                inflater = new Inflater();
+                compressed = new byte[BinaryTableWriter.BUFFER_SIZE];
+                if (mapped) {
+                    // The inflater needs its input in an array, so read the body through a buffer
+                    channel.position(windowStart + buffer.position());
+                    mapped = false;
+                    buffer = ByteBuffer.allocate(BinaryTableWriter.BUFFER_SIZE);
+                }
+                else {
+                    // Whatever follows the header in the buffer is compressed body data
+                    int pending = buffer.remaining();
+                    buffer.get(compressed, 0, pending);
+                    inflater.setInput(compressed, 0, pending);
+                    buffer.clear();
+                }
+                buffer.flip();
+            }
+        }
+        catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Return {@code true} if the file is being read through a memory mapping.
+     *
+     * @return {@code true} if mapped.
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * Return the exported table's name.
+     *
+     * @return The table name.
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Return the exported table's {@code CREATE TABLE} statement.
+     *
+     * @return The statement, or {@code null} if the file does not include it.
+     */
+    public String getCreateSql() {
+        return createSql;
+    }
+
+    /**
+     * Return the names of the columns in each row.
+     *
+     * @return The column names.
+     */
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    /**
+     * Read the next row.
+     *
+     * @param values Receives one value per column: {@code null}, a {@link Long}, a {@link Double}, a {@link String} or a {@code byte[]}. Must hold
+     * at least as many elements as there are columns.
+     * @return {@code true} if a row was read, {@code false} at the end of the file.
+     * @throws IOException If the file could not be read or is corrupt.
+     */
+    public boolean readRow(Object[] values) throws IOException {
+        if (finished) {
+            return false;
+        }
+        require(1);
+        byte marker = buffer.get();
+        if (marker == BinaryTableWriter.END) {
+            finished = true;
+            return false;
+        }
+        if (marker != BinaryTableWriter.ROW) {
+            throw new IOException("Corrupt table file: unexpected marker " + marker);
+        }
+        for (int i = 0; i < columnNames.length; i++) {
+            require(1);
+            byte type = buffer.get();
+            switch (type) {
+                case BinaryTableWriter.TYPE_NULL:
+                    values[i] = null;
+                    break;
+                case BinaryTableWriter.TYPE_INTEGER:
+                    require(8);
+                    values[i] = buffer.getLong();
+                    break;
+                case BinaryTableWriter.TYPE_REAL:
+                    require(8);
+                    values[i] = buffer.getDouble();
+                    break;
+                case BinaryTableWriter.TYPE_TEXT:
+                    values[i] = new String(getBytes(), BinaryTableWriter.UTF_8);
+                    break;
+                case BinaryTableWriter.TYPE_BLOB:
+                    values[i] = getBytes();
+                    break;
+                default:
+                    throw new IOException("Corrupt table file: unknown value type " + type);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inflater != null) {
+            inflater.end();
+        }
+        channel.close();
+    }
+
+    /**
+     * Read a length-prefixed UTF-8 string.
+     *
+     * @return The string.
+     * @throws IOException If the file could not be read.
+     */
+    private String getString() throws IOException {
+        return new String(getBytes(), BinaryTableWriter.UTF_8);
+    }
+
+    /**
+     * Read a length-prefixed byte array, which may be larger than the buffer.
+     *
+     * @return The bytes.
+     * @throws IOException If the file could not be read.
+     */
+    private byte[] getBytes() throws IOException {
+        require(4);
+        int length = buffer.getInt();
+        if (length < 0) {
+            throw new IOException("Corrupt table file: negative length");
+        }
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            if (!buffer.hasRemaining()) {
+                require(1);
+            }
+            int count = Math.min(buffer.remaining(), length - offset);
+            buffer.get(bytes, offset, count);
+            offset += count;
+        }
+        return bytes;
+    }
+
+    /**
+     * Make sure at least {@code count} bytes, no more than the buffer size, are available in the buffer. A mapped buffer is moved to a window
+     * starting at the current position.
+     *
+     * @param count The number of bytes needed.
+     * @throws IOException If the file ends first or could not be read.
+     */
+    private void require(int count) throws IOException {
+        if (buffer.remaining() >= count) {
+            return;
+        }
+        if (mapped) {
+            long position = windowStart + buffer.position();
+            if (position + count > channel.size()) {
+                throw new EOFException("Unexpected end of table file");
+            }
+            if (mapWindow(position, count)) {
+                return;
+            }
+            // Carry on through a buffer from the current position
+            channel.position(position);
+            buffer = ByteBuffer.allocate(BinaryTableWriter.BUFFER_SIZE);
+            buffer.flip();
+        }
+        buffer.compact();
+        try {
+            while (buffer.position() < count) {
+                if (fill() < 0) {
+                    throw new EOFException("Unexpected end of table file");
+                }
+            }
+        }
+        finally {
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Map the window of the file starting at a position.
+     *
+     * @param position The file offset of the window.
+     * @param count The minimum number of bytes the window must hold, if the file is long enough.
+     * @return {@code true} if the window was mapped, {@code false} if mapping failed and the file must be read through a buffer.
+     */
+    private boolean mapWindow(long position, int count) {
+        try {
+            long size = Math.max(0, Math.min(Math.max(MAP_WINDOW, count), channel.size() - position));
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            windowStart = position;
+            mapped = true;
+            return true;
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+        catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        mapped = false;
+        return false;
+    }
+
+    /**
+     * Append decoded bytes to the buffer, which is in write mode.
+     *
+     * @return The number of bytes added, or -1 at the end of the file.
+     * @throws IOException If the file could not be read or is corrupt.
+     */
+    private int fill() throws IOException {
+        if (inflater == null) {
+            return channel.read(buffer);
+        }
+        try {
+            while (true) {
+                int count = inflater.inflate(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                if (count > 0) {
+                    buffer.position(buffer.position() + count);
+                    return count;
+                }
+                if (inflater.finished()) {
+                    return -1;
+                }
+                if (inflater.needsInput()) {
+                    int read = channel.read(ByteBuffer.wrap(compressed));
+                    if (read < 0) {
+                        return -1;
+                    }
+                    inflater.setInput(compressed, 0, read);
+                }
+            }
+        }
+        catch (DataFormatException e) {
+            throw new IOException("Corrupt table file: " + e.getMessage());
+        }
+    }
+}
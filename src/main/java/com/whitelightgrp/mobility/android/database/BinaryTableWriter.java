@@ -0,0 +1,326 @@
+package com.whitelightgrp.mobility.android.database;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+
+import android.database.Cursor;
+
+/**
+ * Writes the rows of a table to a compact binary file. <p> The file starts with an uncompressed header: the magic number {@link #MAGIC}, the
+ * format {@link #VERSION}, a flags byte ({@link #FLAG_DEFLATE}), the table name, the table's {@code CREATE TABLE} statement and the column names.
+ * The body, deflated if {@link #FLAG_DEFLATE} is set, is a sequence of rows, each introduced by {@link #ROW} and holding one typed value per
+ * column, and ends with {@link #END}. Each value is a type byte ({@link #TYPE_NULL}, {@link #TYPE_INTEGER}, {@link #TYPE_REAL}, {@link #TYPE_TEXT}
+ * or {@link #TYPE_BLOB}) followed by an 8-byte integer or real, or by a 4-byte length and that many bytes of UTF-8 text or blob data. All numbers
+ * are big-endian. Strings in the header are length-prefixed UTF-8. </p>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public class BinaryTableWriter implements Closeable {
+
+    /**
+     * Magic number at the start of every file ("SQTB").
+     */
+    public static final int MAGIC = 0x53515442;
+    /**
+     * Format version.
+     */
+    public static final byte VERSION = 1;
+    /**
+     * Header flag: the body is compressed with {@link Deflater}.
+     */
+    public static final byte FLAG_DEFLATE = 0x01;
+    /**
+     * Marker introducing a row.
+     */
+    public static final byte ROW = 1;
+    /**
+     * Marker ending the body.
+     */
+    public static final byte END = 0;
+    /**
+     * Value type: NULL, no payload.
+     */
+    public static final byte TYPE_NULL = 0;
+    /**
+     * Value type: 8-byte signed integer.
+     */
+    public static final byte TYPE_INTEGER = 1;
+    /**
+     * Value type: 8-byte IEEE 754 double.
+     */
+    public static final byte TYPE_REAL = 2;
+    /**
+     * Value type: 4-byte length followed by UTF-8 text.
+     */
+    public static final byte TYPE_TEXT = 3;
+    /**
+     * Value type: 4-byte length followed by blob data.
+     */
+    public static final byte TYPE_BLOB = 4;
+
+    /**
+     * Character set of all strings in the file.
+     */
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Size of the write buffer.
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The file being written.
+     */
+    private final FileChannel channel;
+    /**
+     * Rows are encoded here before being written, or deflated, in bulk.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    /**
+     * Compressor for the body, or {@code null} if the body is not compressed.
+     */
+    private final Deflater deflater;
+    /**
+     * Output of the compressor.
+     */
+    private final byte[] deflated;
+    /**
+     * Number of columns in each row.
+     */
+    private final int columnCount;
+    /**
+     * Number of rows written.
+     */
+    private long rowCount = 0;
+
+    /**
+     * Create the file and write its header.
+     *
+     * @param file The file to create or overwrite.
+     * @param tableName The name of the table being exported.
+     * @param createSql The table's {@code CREATE TABLE} statement, or {@code null} if unknown.
+     * @param columnNames The names of the columns in each row.
+     * @param deflate {@code true} to compress the body.
+     * @throws IOException If the file could not be written.
+     */
+    public BinaryTableWriter(File file, String tableName, String createSql, String[] columnNames, boolean deflate) throws IOException {
+        channel = new FileOutputStream(file).getChannel();
+        columnCount = columnNames.length;
+        try {
+            buffer.putInt(MAGIC);
+            buffer.put(VERSION);
+            buffer.put(deflate ? FLAG_DEFLATE : 0);
+            putString(tableName);
+            putString(createSql == null ? "" : createSql);
+            buffer.putInt(columnCount);
+            for (String column : columnNames) {
+                putString(column);
+            }
+            // The header is never compressed
+            writeBuffer();
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (deflate) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            deflated = new byte[BUFFER_SIZE];
+        }
+        else {
+            deflater = null;
+            deflated = null;
+        }
+    }
+
+    /**
+     * Write the row at the cursor's current position.
+     *
+     * @param cursor A cursor over the exported columns, in header order. Must be at a valid position.
+     * @throws IOException If the file could not be written.
+     */
+    public void writeRow(Cursor cursor) throws IOException {
+        ensureRemaining(1);
+        buffer.put(ROW);
+        for (int i = 0; i < columnCount; i++) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    ensureRemaining(9);
+                    buffer.put(TYPE_INTEGER);
+                    buffer.putLong(cursor.getLong(i));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    ensureRemaining(9);
+                    buffer.put(TYPE_REAL);
+                    buffer.putDouble(cursor.getDouble(i));
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    putBytes(TYPE_TEXT, cursor.getString(i).getBytes(UTF_8));
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    putBytes(TYPE_BLOB, cursor.getBlob(i));
+                    break;
+                case Cursor.FIELD_TYPE_NULL:
+                default:
+                    ensureRemaining(1);
+                    buffer.put(TYPE_NULL);
+                    break;
+            }
+        }
+        rowCount++;
+    }
+
+    /**
+     * Return the number of rows written so far.
+     *
+     * @return The row count.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Write the end marker, flush all buffered data and close the file.
+     *
+     * @throws IOException If the file could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            ensureRemaining(1);
+            buffer.put(END);
+            flush();
+            if (deflater != null) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    writeDeflated(deflater.deflate(deflated));
+                }
+            }
+        }
+        finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * Append a type byte and a length-prefixed byte array, writing large arrays straight through.
+     *
+     * @param type The value type.
+     * @param bytes The value.
+     * @throws IOException If the file could not be written.
+     */
+    private void putBytes(byte type, byte[] bytes) throws IOException {
+        ensureRemaining(5);
+        buffer.put(type);
+        buffer.putInt(bytes.length);
+        if (bytes.length <= buffer.remaining()) {
+            buffer.put(bytes);
+            return;
+        }
+        flush();
+        if (bytes.length <= buffer.remaining()) {
+            buffer.put(bytes);
+        }
+        else {
+            write(ByteBuffer.wrap(bytes));
+        }
+    }
+
+    /**
+     * Append a length-prefixed UTF-8 string to the header.
+     *
+     * @param value The string.
+     * @throws IOException If the header does not fit in the buffer.
+     */
+    private void putString(String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        if (bytes.length + 4 > buffer.remaining()) {
+            writeBuffer();
+        }
+        buffer.putInt(bytes.length);
+        if (bytes.length > buffer.remaining()) {
+            writeBuffer();
+            channel.write(ByteBuffer.wrap(bytes));
+        }
+        else {
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Make room for at least {@code count} bytes in the buffer.
+     *
+     * @param count The number of bytes needed.
+     * @throws IOException If the file could not be written.
+     */
+    private void ensureRemaining(int count) throws IOException {
+        if (buffer.remaining() < count) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the buffered body bytes, through the compressor if enabled.
+     *
+     * @throws IOException If the file could not be written.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Write body bytes, through the compressor if enabled.
+     *
+     * @param data The bytes to write. Must be backed by an array.
+     * @throws IOException If the file could not be written.
+     */
+    private void write(ByteBuffer data) throws IOException {
+        if (deflater == null) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            return;
+        }
+        deflater.setInput(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        while (!deflater.needsInput()) {
+            writeDeflated(deflater.deflate(deflated));
+        }
+        data.position(data.limit());
+    }
+
+    /**
+     * Write the uncompressed buffer contents, used for the header only.
+     *
+     * @throws IOException If the file could not be written.
+     */
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write compressed bytes from the compressor output.
+     *
+     * @param length The number of compressed bytes available.
+     * @throws IOException If the file could not be written.
+     */
+    private void writeDeflated(int length) throws IOException {
+        ByteBuffer out = ByteBuffer.wrap(deflated, 0, length);
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.whitelightgrp.mobility.android.database;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+
+/**
+ * A cursor factory that binds arguments according to their Java type rather than as Strings, so that comparisons against INTEGER and REAL
+ * columns can use their indexes.
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+class BindArgsCursorFactory implements SQLiteDatabase.CursorFactory {
+
+    /**
+     * Arguments to bind, or {@code null} if there are none.
+     */
+    private final Object[] bindArgs;
+
+    /**
+     * Constructor.
+     *
+     * @param bindArgs Arguments to bind, or {@code null} if there are none.
+     */
+    BindArgsCursorFactory(Object[] bindArgs) {
+        this.bindArgs = bindArgs;
+    }
+
+    @Override
+    public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+        if (bindArgs != null) {
+            for (int i = 0; i < bindArgs.length; i++) {
+                DatabaseUtils.bindObjectToProgram(query, i + 1, bindArgs[i]);
+            }
+        }
+        return new SQLiteCursor(masterQuery, editTable, query);
+    }
+}
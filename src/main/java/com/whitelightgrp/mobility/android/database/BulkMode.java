@@ -0,0 +1,153 @@
+package com.whitelightgrp.mobility.android.database;
+
+import java.io.Closeable;
+import java.util.Locale;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+/**
+ * Temporarily tunes a connection for bulk loads such as {@link SQLiteUtils#importTable(android.content.Context, String, String)},
+ * {@link SQLiteUtils#exportTables(android.content.Context, java.util.Collection, String)} or
+ * {@link SQLiteUtils#copyRecords(SQLiteDatabase, String, String, String, Object[], int)}, and restores the previous settings afterwards. <p> While
+ * active, {@code synchronous} is {@code OFF}, {@code temp_store} is {@code MEMORY}, the page cache is enlarged and, unless the database uses
+ * write-ahead logging, {@code journal_mode} is {@code MEMORY} and {@code locking_mode} is {@code EXCLUSIVE}. Transactions still roll back, but a
+ * crash or power loss during the bulk operation may corrupt the database, so only use it for data that can be loaded again. Typical use:
+ * </p>
+ * <pre>
+ * BulkMode bulk = BulkMode.enter(db);
+ * try {
+ *     ...
+ * }
+ * finally {
+ *     bulk.close();
+ * }
+ * </pre>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public class BulkMode implements Closeable {
+
+    /**
+     * Page cache size applied by {@link #enter(SQLiteDatabase)}, in KiB.
+     */
+    public static final int DEFAULT_CACHE_SIZE_KIB = 8 * 1024;
+
+    /**
+     * The tuned connection.
+     */
+    private final SQLiteDatabase db;
+    /**
+     * Previous {@code synchronous} setting.
+     */
+    private final long synchronous;
+    /**
+     * Previous {@code journal_mode}.
+     */
+    private final String journalMode;
+    /**
+     * Previous {@code cache_size}, in pages if positive or KiB if negative.
+     */
+    private final long cacheSize;
+    /**
+     * Previous {@code temp_store} setting.
+     */
+    private final long tempStore;
+    /**
+     * Previous {@code locking_mode}.
+     */
+    private final String lockingMode;
+    /**
+     * {@code true} if the journal and locking modes were changed.
+     */
+    private final boolean journalChanged;
+    /**
+     * {@code true} once the previous settings have been restored.
+     */
+    private boolean closed = false;
+
+    /**
+     * Apply the bulk settings with a page cache of {@link #DEFAULT_CACHE_SIZE_KIB}.
+     *
+     * @param db The connection to tune. Must not be in a transaction.
+     * @return The active bulk mode, to be closed when the bulk operation is finished.
+     * @throws SQLiteException If the settings could not be read or applied.
+     */
+    public static BulkMode enter(SQLiteDatabase db) {
+        return enter(db, DEFAULT_CACHE_SIZE_KIB);
+    }
+
+    /**
+     * Apply the bulk settings.
+     *
+     * @param db The connection to tune. Must not be in a transaction.
+     * @param cacheSizeKiB The page cache size to use, in KiB.
+     * @return The active bulk mode, to be closed when the bulk operation is finished.
+     * @throws IllegalStateException If a transaction is in progress.
+     * @throws SQLiteException If the settings could not be read or applied.
+     */
+    public static BulkMode enter(SQLiteDatabase db, int cacheSizeKiB) {
+        if (db.inTransaction()) {
+            throw new IllegalStateException("Bulk mode cannot be entered inside a transaction");
+        }
+        BulkMode bulk = new BulkMode(db);
+        try {
+            db.execSQL("PRAGMA synchronous=OFF");
+            db.execSQL("PRAGMA cache_size=" + -cacheSizeKiB);
+            db.execSQL("PRAGMA temp_store=MEMORY");
+            if (bulk.journalChanged) {
+                DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode=MEMORY", null);
+                DatabaseUtils.stringForQuery(db, "PRAGMA locking_mode=EXCLUSIVE", null);
+            }
+        }
+        catch (SQLiteException e) {
+            // Restore what can be restored, but report the failure that got us here rather than one from the restore
+            try {
+                bulk.close();
+            }
+            catch (SQLiteException closeError) {
+                closeError.printStackTrace();
+            }
+            throw e;
+        }
+        return bulk;
+    }
+
+    /**
+     * Constructor. Reads the current settings.
+     *
+     * @param db The connection to tune.
+     */
+    private BulkMode(SQLiteDatabase db) {
+        this.db = db;
+        synchronous = DatabaseUtils.longForQuery(db, "PRAGMA synchronous", null);
+        journalMode = DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode", null);
+        cacheSize = DatabaseUtils.longForQuery(db, "PRAGMA cache_size", null);
+        tempStore = DatabaseUtils.longForQuery(db, "PRAGMA temp_store", null);
+        lockingMode = DatabaseUtils.stringForQuery(db, "PRAGMA locking_mode", null);
+        // Leaving write-ahead logging, or locking the file, would shut out the read-only connections
+        journalChanged = !"wal".equals(journalMode.toLowerCase(Locale.US));
+    }
+
+    /**
+     * Restore the settings the connection had before {@link #enter(SQLiteDatabase)}. Must not be called inside a transaction. Further calls have no
+     * effect.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        db.execSQL("PRAGMA synchronous=" + synchronous);
+        db.execSQL("PRAGMA cache_size=" + cacheSize);
+        db.execSQL("PRAGMA temp_store=" + tempStore);
+        if (journalChanged) {
+            DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode=" + journalMode, null);
+            DatabaseUtils.stringForQuery(db, "PRAGMA locking_mode=" + lockingMode, null);
+            // Leaving exclusive locking mode only releases the lock on the next access to the file
+            DatabaseUtils.longForQuery(db, "SELECT count(*) FROM sqlite_master", null);
+        }
+    }
+}
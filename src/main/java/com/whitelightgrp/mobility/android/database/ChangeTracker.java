@@ -0,0 +1,224 @@
+package com.whitelightgrp.mobility.android.database;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+/**
+ * Records which rows of a table were inserted, updated or deleted, so that only those rows need to be exported. <p> Tracking a table installs three
+ * triggers that append the primary key of every changed row to the shared change log {@link #LOG_TABLE}. Each entry gets an ever increasing sequence
+ * number; the highest one, returned by {@link #getCurrentToken(SQLiteDatabase)}, serves as the token from which the next delta export continues.
+ * Only tables with a single-column primary key (including an {@code INTEGER PRIMARY KEY}) can be tracked. Rows deleted by the {@code REPLACE}
+ * conflict algorithm because of a conflict on another unique column are only logged while {@code PRAGMA recursive_triggers} is on. </p>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public class ChangeTracker {
+
+    /**
+     * The change log, shared by all tracked tables.
+     */
+    public static final String LOG_TABLE = "sqliteutils_changes";
+    /**
+     * The table of a delta export holding the keys of rows deleted since the previous export.
+     */
+    public static final String TOMBSTONE_TABLE = "sqliteutils_tombstones";
+    /**
+     * The table of a delta export describing the exported tables and the token range they cover.
+     */
+    public static final String DELTA_TABLE = "sqliteutils_delta";
+
+    /**
+     * Start tracking changes to a table. Changes made before this call are not recorded. Tracking an already tracked table has no effect.
+     *
+     * @param db The database containing the table.
+     * @param tableName The table to track.
+     * @return {@code true} if successful, {@code false} if the table does not have a single-column primary key or an error occurred.
+     */
+    public static boolean enable(SQLiteDatabase db, String tableName) {
+        String keyColumn = getKeyColumn(db, tableName);
+        if (keyColumn == null) {
+            return false;
+        }
+        String table = SQLiteUtils.quoteIdentifier(tableName);
+        String name = DatabaseUtils.sqlEscapeString(tableName);
+        String key = SQLiteUtils.quoteIdentifier(keyColumn);
+        String log = "INSERT INTO " + LOG_TABLE + " (tbl, op, row_key) ";
+
+        db.beginTransaction();
+        try {
+            // The key column is left untyped so that keys are logged exactly as stored in the tracked table
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + LOG_TABLE
+                    + " (seq INTEGER PRIMARY KEY AUTOINCREMENT, tbl TEXT NOT NULL, op TEXT NOT NULL, row_key)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + LOG_TABLE + "_tbl ON " + LOG_TABLE + " (tbl, seq)");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS " + triggerName(tableName, "insert") + " AFTER INSERT ON " + table + " BEGIN "
+                    + log + "VALUES (" + name + ", 'I', NEW." + key + "); END");
+            // A changed key is logged as the deletion of the old key and the insertion of the new one
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS " + triggerName(tableName, "update") + " AFTER UPDATE ON " + table + " BEGIN "
+                    + log + "SELECT " + name + ", 'D', OLD." + key + " WHERE OLD." + key + " IS NOT NEW." + key + "; "
+                    + log + "VALUES (" + name + ", 'U', NEW." + key + "); END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS " + triggerName(tableName, "delete") + " AFTER DELETE ON " + table + " BEGIN "
+                    + log + "VALUES (" + name + ", 'D', OLD." + key + "); END");
+            db.setTransactionSuccessful();
+            return true;
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return false;
+        }
+        finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Stop tracking changes to a table and forget its logged changes.
+     *
+     * @param db The database containing the table.
+     * @param tableName The tracked table.
+     * @return {@code true} if successful, {@code false} otherwise.
+     */
+    public static boolean disable(SQLiteDatabase db, String tableName) {
+        db.beginTransaction();
+        try {
+            db.execSQL("DROP TRIGGER IF EXISTS " + triggerName(tableName, "insert"));
+            db.execSQL("DROP TRIGGER IF EXISTS " + triggerName(tableName, "update"));
+            db.execSQL("DROP TRIGGER IF EXISTS " + triggerName(tableName, "delete"));
+            if (isLogCreated(db)) {
+                db.execSQL("DELETE FROM " + LOG_TABLE + " WHERE tbl=?", new Object[] { tableName });
+            }
+            db.setTransactionSuccessful();
+            return true;
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return false;
+        }
+        finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Return {@code true} if changes to a table are being tracked.
+     *
+     * @param db The database containing the table.
+     * @param tableName The table name.
+     * @return {@code true} if the table's triggers are installed.
+     */
+    public static boolean isEnabled(SQLiteDatabase db, String tableName) {
+        Object[] args = { unquotedTriggerName(tableName, "insert") };
+        return SQLiteUtils.safeQueryForCount(db, "sqlite_master", "type='trigger' AND name=?", args) > 0;
+    }
+
+    /**
+     * Return the token of the most recent logged change. Pass it to
+     * {@link SQLiteUtils#exportChangesSince(android.content.Context, java.util.Collection, String, long)} later to export only what changed after
+     * this point.
+     *
+     * @param db The database.
+     * @return The token, or 0 if nothing has been logged yet or an error occurred.
+     */
+    public static long getCurrentToken(SQLiteDatabase db) {
+        if (!isLogCreated(db)) {
+            return 0;
+        }
+        return SQLiteUtils.queryForLong(db, "sqlite_sequence", "seq", "name=?", new Object[] { LOG_TABLE }, 0);
+    }
+
+    /**
+     * Discard logged changes up to and including a token. Call this with the oldest token any consumer still needs; changes since a discarded token
+     * can no longer be exported.
+     *
+     * @param db The database.
+     * @param token The newest token to discard.
+     * @return {@code true} if successful, {@code false} otherwise.
+     */
+    public static boolean prune(SQLiteDatabase db, long token) {
+        return !isLogCreated(db) || SQLiteUtils.safeExecSql(db, "DELETE FROM " + LOG_TABLE + " WHERE seq<=?", new Object[] { token });
+    }
+
+    /**
+     * Discard logged changes after a token. Used inside a transaction to drop the entries logged by changes that must not be exported, such as those
+     * made by {@link SQLiteUtils#importChanges(android.content.Context, String, String)}.
+     *
+     * @param db The database.
+     * @param token The newest token to keep.
+     * @return {@code true} if successful, {@code false} otherwise.
+     */
+    static boolean discardAfter(SQLiteDatabase db, long token) {
+        return !isLogCreated(db) || SQLiteUtils.safeExecSql(db, "DELETE FROM " + LOG_TABLE + " WHERE seq>?", new Object[] { token });
+    }
+
+    /**
+     * Return the name of a table's primary key column.
+     *
+     * @param db The database containing the table.
+     * @param tableName The table name, optionally qualified with the name of an attached database.
+     * @return The column name, or {@code null} if the table does not exist, has no primary key or has a composite primary key.
+     */
+    public static String getKeyColumn(SQLiteDatabase db, String tableName) {
+        int dot = tableName.indexOf('.');
+        String sql = dot < 0
+                ? "PRAGMA table_info(" + DatabaseUtils.sqlEscapeString(tableName) + ")"
+                : "PRAGMA " + tableName.substring(0, dot) + ".table_info(" + DatabaseUtils.sqlEscapeString(tableName.substring(dot + 1)) + ")";
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, null);
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            int pkIndex = cursor.getColumnIndexOrThrow("pk");
+            String keyColumn = null;
+            while (cursor.moveToNext()) {
+                if (cursor.getInt(pkIndex) > 0) {
+                    if (keyColumn != null) {
+                        return null;
+                    }
+                    keyColumn = cursor.getString(nameIndex);
+                }
+            }
+            return keyColumn;
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+        finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Return {@code true} if the change log exists.
+     *
+     * @param db The database.
+     * @return {@code true} if at least one table has ever been tracked.
+     */
+    private static boolean isLogCreated(SQLiteDatabase db) {
+        return SQLiteUtils.safeQueryForCount(db, "sqlite_master", "type='table' AND name=?", new Object[] { LOG_TABLE }) > 0;
+    }
+
+    /**
+     * Return the quoted name of one of a table's triggers.
+     *
+     * @param tableName The tracked table.
+     * @param event The trigger event: {@code insert}, {@code update} or {@code delete}.
+     * @return The quoted trigger name.
+     */
+    private static String triggerName(String tableName, String event) {
+        return SQLiteUtils.quoteIdentifier(unquotedTriggerName(tableName, event));
+    }
+
+    /**
+     * Return the name of one of a table's triggers.
+     *
+     * @param tableName The tracked table.
+     * @param event The trigger event: {@code insert}, {@code update} or {@code delete}.
+     * @return The trigger name.
+     */
+    private static String unquotedTriggerName(String tableName, String event) {
+        return "sqliteutils_" + tableName + "_" + event;
+    }
+}
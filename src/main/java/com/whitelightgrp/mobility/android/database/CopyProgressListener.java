@@ -0,0 +1,29 @@
+package com.whitelightgrp.mobility.android.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Receives progress from {@link SQLiteUtils#copyRecordsChunked(SQLiteDatabase, String, String, String, String, Object[], int, int, long,
+ * CopyProgressListener)} and may cancel the copy between chunks.
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public interface CopyProgressListener {
+
+    /**
+     * Called after each chunk has been copied, inside the chunk's transaction and just before it commits. A resume checkpoint written to {@code db}
+     * here therefore commits atomically with the chunk.
+     *
+     * @param db The database the chunk was copied in.
+     * @param rowsCopied The total number of rows copied so far, including this chunk.
+     * @param lastKey The highest key copied so far. Pass it as {@code startAfterKey} to resume the copy after this chunk.
+     */
+    void onChunkCopied(SQLiteDatabase db, long rowsCopied, long lastKey);
+
+    /**
+     * Polled before each chunk.
+     *
+     * @return {@code true} to stop the copy after the last committed chunk.
+     */
+    boolean isCancelled();
+}
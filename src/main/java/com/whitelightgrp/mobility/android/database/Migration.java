@@ -0,0 +1,147 @@
+package com.whitelightgrp.mobility.android.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+/**
+ * One step of a database's schema history, run by {@link OpenHelper} when the database is created or upgraded past the step's version. <p> The
+ * steps registered with {@link OpenHelper#register(String, int, Migration...)} run in ascending version order inside the single transaction
+ * {@code SQLiteOpenHelper} opens for {@code onCreate} or {@code onUpgrade}, so either every step is applied or none is. A step that throws an
+ * exception rolls the whole upgrade back. After a run, each step reports how long it took and, for each table it rebuilt, the row count, copy time
+ * and index build time. </p>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public abstract class Migration {
+
+    /**
+     * The schema version this step upgrades to.
+     */
+    private final int version;
+    /**
+     * What the step does, for logging.
+     */
+    private final String description;
+    /**
+     * Time taken by the last run, in nanoseconds.
+     */
+    private long elapsedNanos = 0;
+    /**
+     * Timings of the tables rebuilt by the last run.
+     */
+    private final List<TableTimings> rebuilds = new ArrayList<TableTimings>();
+
+    /**
+     * Constructor.
+     *
+     * @param version The schema version this step upgrades to, at least 1.
+     * @param description What the step does, for logging.
+     */
+    public Migration(int version, String description) {
+        if (version < 1) {
+            throw new IllegalArgumentException("Migration version must be at least 1");
+        }
+        this.version = version;
+        this.description = description;
+    }
+
+    /**
+     * Apply the step. Called inside the upgrade transaction; do not begin or end transactions at this level.
+     *
+     * @param db The database being upgraded.
+     * @throws SQLiteException If the step failed, which rolls back the whole upgrade.
+     */
+    protected abstract void migrate(SQLiteDatabase db);
+
+    /**
+     * Rebuild a table with a new schema, keeping its rows, as
+     * {@link SQLiteUtils#rebuildTable(SQLiteDatabase, String, String, Map, Map, List)} does, and record its timings.
+     *
+     * @param db The database being upgraded.
+     * @param tableName The table to rebuild.
+     * @param createSql The {@code CREATE TABLE} statement of the new schema, naming the table {@code tableName}.
+     * @param columnMap Maps each new column to the old column, or any SQL expression over the old row, that fills it. Use {@code null} to copy the
+     * columns present in both schemas.
+     * @param defaultValues Maps new columns that have no source to the value to store in them. May be {@code null}.
+     * @param indexSql The {@code CREATE INDEX} statements of the new schema, or {@code null} to recreate the indexes the table has now.
+     * @throws SQLiteException If the table could not be rebuilt.
+     */
+    protected void rebuildTable(
+            SQLiteDatabase db,
+            String tableName,
+            String createSql,
+            Map<String, String> columnMap,
+            Map<String, Object> defaultValues,
+            List<String> indexSql
+    ) {
+        TableTimings timings = SQLiteUtils.rebuildTable(db, tableName, createSql, columnMap, defaultValues, indexSql);
+        if (timings == null) {
+            throw new SQLiteException("Could not rebuild table " + tableName);
+        }
+        rebuilds.add(timings);
+    }
+
+    /**
+     * Return the schema version this step upgrades to.
+     *
+     * @return The version.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Return what the step does.
+     *
+     * @return The description.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Return the time taken by the last run.
+     *
+     * @return The elapsed time in milliseconds, or 0 if the step has not run.
+     */
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000L;
+    }
+
+    /**
+     * Return the timings of the tables rebuilt by the last run.
+     *
+     * @return The timings, in rebuild order.
+     */
+    public List<TableTimings> getTableTimings() {
+        return Collections.unmodifiableList(rebuilds);
+    }
+
+    @Override
+    public String toString() {
+        return "Version " + version + " (" + description + "): " + getElapsedMillis() + " ms";
+    }
+
+    /**
+     * Run the step, recording its timings. The cached column lists are dropped afterwards, whether the step succeeded or not, since it may have
+     * changed tables with plain SQL.
+     *
+     * @param db The database being upgraded.
+     */
+    final void run(SQLiteDatabase db) {
+        rebuilds.clear();
+        long start = System.nanoTime();
+        try {
+            migrate(db);
+        }
+        finally {
+            SchemaCache.invalidate(db);
+        }
+        elapsedNanos = System.nanoTime() - start;
+    }
+}
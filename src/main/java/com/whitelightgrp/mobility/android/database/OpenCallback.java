@@ -0,0 +1,26 @@
+package com.whitelightgrp.mobility.android.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Receives the result of {@link OpenHelper#openAsync(android.content.Context, String, java.util.Collection, java.util.Collection, OpenCallback)}.
+ * Both methods are called on the background thread that opened the database; post to the main thread from there if needed.
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public interface OpenCallback {
+
+    /**
+     * Called once the database is open, upgraded, warmed up and its statements compiled.
+     *
+     * @param db The primary connection.
+     */
+    void onOpened(SQLiteDatabase db);
+
+    /**
+     * Called if the database could not be opened or upgraded.
+     *
+     * @param e The error.
+     */
+    void onError(RuntimeException e);
+}
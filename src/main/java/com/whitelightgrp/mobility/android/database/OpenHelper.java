@@ -1,57 +1,632 @@
 package com.whitelightgrp.mobility.android.database;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 /**
- * A minimal implementation of SQLiteOpenHelper that stores a single database reference for all callers to use.
+ * A minimal implementation of SQLiteOpenHelper that stores a single database reference per database file for all callers to use.
+ * <p>
+ * Each helper owns exactly one writable (primary) connection. It is opened at most once, no matter how many threads ask for it concurrently, and
+ * is published safely so that subsequent callers retrieve it without taking a lock. Callers that need to know when the connection may be closed
+ * use {@link #acquireDatabase(Context)} and {@link #releaseDatabase()}; callers of {@link #getDatabase(Context)} keep the connection open for the
+ * life of the process.
+ * </p>
+ * <p>
+ * The methods without a database name work on the default database, {@link #DATABASE_NAME}. Further databases are added with
+ * {@link #register(String, int)} and addressed by name. Each has its own file, connections, locks, page cache and settings, so that writing to one
+ * never blocks reading another.
+ * </p>
+ * <p>
+ * The schema of each database is built and upgraded by the {@link Migration} steps registered with it, run in version order in one transaction.
+ * </p>
  *
  * @author Justin Rohde, WhiteLight Group
  */
 public class OpenHelper extends SQLiteOpenHelper {
 
     /**
-     * Database name.
+     * Name of the default database.
      */
-    private final static String DATABASE_NAME = "RFgen";
+    public final static String DATABASE_NAME = "RFgen";
     /**
-     * Database version.
+     * Version of the default database.
      */
     private final static int DATABASE_VERSION = 2;
 
     /**
-     * The one and only instance of the database.
+     * Schema version of each registered database, keyed by name. Guarded by {@code OpenHelper.class}.
+     */
+    private static final Map<String, Integer> versions = new HashMap<String, Integer>();
+    /**
+     * Migration steps of each registered database, keyed by name. Guarded by {@code OpenHelper.class}.
+     */
+    private static final Map<String, Migration[]> migrations = new HashMap<String, Migration[]>();
+    /**
+     * The one and only helper of each database that has been used, keyed by name. Written under {@code OpenHelper.class}, read without it.
+     */
+    private static final Map<String, OpenHelper> helpers = new ConcurrentHashMap<String, OpenHelper>();
+
+    /**
+     * Background thread used by {@link #openAsync(Context, String, Collection, Collection, OpenCallback)}, created on first use. Guarded by
+     * {@code OpenHelper.class}.
+     */
+    private static ExecutorService opener = null;
+
+    static {
+        versions.put(DATABASE_NAME, DATABASE_VERSION);
+    }
+
+    /**
+     * The one and only instance of the database. Written under the helper's monitor, read without it.
+     */
+    private volatile SQLiteDatabase db = null;
+    /**
+     * Number of outstanding handles returned by {@link #acquireDatabase(Context)}. Guarded by the helper's monitor.
+     */
+    private int referenceCount = 0;
+    /**
+     * {@code true} once {@link #getDatabase(Context)} has handed out the connection, which pins it open. Written under the helper's monitor.
+     */
+    private volatile boolean pinned = false;
+    /**
+     * Pool of read-only connections, or {@code null} if write-ahead logging has not been enabled.
+     */
+    private volatile ReadConnectionPool readPool = null;
+    /**
+     * Settings applied to every connection as it is opened, or {@code null} to keep the SQLite defaults.
+     */
+    private volatile PragmaProfile profile = null;
+    /**
+     * Schema version of the database.
+     */
+    private final int version;
+    /**
+     * Migration steps, in ascending version order.
+     */
+    private final Migration[] steps;
+    /**
+     * Steps run by the last create or upgrade, in the order they ran.
+     */
+    private volatile List<Migration> applied = Collections.emptyList();
+
+    /**
+     * Register a database, so that it can be opened by name. Call this before the database is first used, for example in
+     * {@code Application.onCreate()}.
+     *
+     * @param name The database file name.
+     * @param version The schema version of the database.
+     * @throws IllegalStateException If a database with that name has already been used.
      */
-    private static SQLiteDatabase db = null;
+    public static void register(String name, int version) {
+        register(name, version, new Migration[0]);
+    }
 
     /**
-     * Return the single SQLiteDatabase instance, creating it beforehand if needed.
+     * Register a database together with the steps that build and upgrade its schema, so that it can be opened by name. Call this before the
+     * database is first used, for example in {@code Application.onCreate()}. The default database may be registered again this way to add steps.
+     * When the database is created, every step up to {@code version} runs; when it is upgraded, the steps after the old version up to
+     * {@code version} run.
+     *
+     * @param name The database file name.
+     * @param version The schema version of the database.
+     * @param steps The migration steps, in any order.
+     * @throws IllegalStateException If a database with that name has already been used.
+     */
+    public static void register(String name, int version, Migration... steps) {
+        Migration[] sorted = steps.clone();
+        Arrays.sort(sorted, new Comparator<Migration>() {
+            @Override
+            public int compare(Migration lhs, Migration rhs) {
+                return lhs.getVersion() < rhs.getVersion() ? -1 : (lhs.getVersion() == rhs.getVersion() ? 0 : 1);
+            }
+        });
+        synchronized (OpenHelper.class) {
+            if (helpers.containsKey(name)) {
+                throw new IllegalStateException("Database " + name + " is already in use");
+            }
+            versions.put(name, version);
+            migrations.put(name, sorted);
+        }
+    }
+
+    /**
+     * Return the migration steps run when a database was last created or upgraded by this process, with their timings.
+     *
+     * @param name The name of the database.
+     * @return The steps in the order they ran, empty if none ran.
+     */
+    public static List<Migration> getAppliedMigrations(String name) {
+        OpenHelper helper = helpers.get(name);
+        return helper == null ? Collections.<Migration>emptyList() : helper.applied;
+    }
+
+    /**
+     * Return the single SQLiteDatabase instance of the default database, creating it beforehand if needed. The connection stays open for the life of
+     * the process.
      *
      * @param context The {@link Context} used to open or create the database.
      * @return The database instance.
      */
     public static SQLiteDatabase getDatabase(Context context) {
-        return db == null ? db = new OpenHelper(context).getWritableDatabase() : db;
+        return getDatabase(context, DATABASE_NAME);
+    }
+
+    /**
+     * Return the single SQLiteDatabase instance of a database, creating it beforehand if needed. The connection stays open for the life of the
+     * process.
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @param name The name of a registered database.
+     * @return The database instance.
+     */
+    public static SQLiteDatabase getDatabase(Context context, String name) {
+        OpenHelper helper = getInstance(context, name);
+        SQLiteDatabase result = helper.db;
+        if (result != null && helper.pinned) {
+            return result;
+        }
+        synchronized (helper) {
+            helper.pinned = true;
+            return helper.open();
+        }
+    }
+
+    /**
+     * Open the default database on a background thread. See {@link #openAsync(Context, String, Collection, Collection, OpenCallback)}.
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @param callback Notified on the background thread once the database is ready, or {@code null}.
+     * @return A future yielding the primary connection.
+     */
+    public static Future<SQLiteDatabase> openAsync(Context context, OpenCallback callback) {
+        return openAsync(context, DATABASE_NAME, null, null, callback);
+    }
+
+    /**
+     * Open a database on a background thread, so that creating or upgrading it never blocks the caller, typically the main thread during a cold
+     * start. <p> Once open, the pages of the listed tables and their indexes are read into the operating system's file cache by a
+     * {@link PageCacheWarmer}, and the listed statements are compiled into the connection's {@link StatementCache}. The connection is pinned
+     * open as by {@link #getDatabase(Context, String)}; calls to that method made meanwhile simply wait for the open to finish. </p>
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @param name The name of a registered database.
+     * @param hotTables Tables to warm up, or {@code null}.
+     * @param statements SQL statements to compile into the statement cache, exactly as they will later be run through it, or {@code null}. Use
+     * {@link SQLiteUtils#precompileScalarQuery(SQLiteDatabase, String, String, String)} from the callback for the scalar query helpers.
+     * @param callback Notified on the background thread once the database is ready, or {@code null}.
+     * @return A future yielding the primary connection, or throwing the error that prevented the open.
+     */
+    public static Future<SQLiteDatabase> openAsync(
+            final Context context,
+            final String name,
+            final Collection<String> hotTables,
+            final Collection<String> statements,
+            final OpenCallback callback
+    ) {
+        // Fail fast on an unregistered name, on the calling thread
+        getInstance(context, name);
+        return getOpener().submit(new Callable<SQLiteDatabase>() {
+            @Override
+            public SQLiteDatabase call() {
+                SQLiteDatabase db;
+                try {
+                    db = getDatabase(context, name);
+                    if (hotTables != null) {
+                        new PageCacheWarmer(db, hotTables).run();
+                    }
+                    if (statements != null) {
+                        StatementCache cache = StatementCache.forDatabase(db);
+                        for (String sql : statements) {
+                            cache.precompile(sql);
+                        }
+                    }
+                }
+                catch (RuntimeException e) {
+                    if (callback != null) {
+                        callback.onError(e);
+                    }
+                    throw e;
+                }
+                if (callback != null) {
+                    callback.onOpened(db);
+                }
+                return db;
+            }
+        });
+    }
+
+    /**
+     * Acquire a counted handle on the single SQLiteDatabase instance of the default database, creating it beforehand if needed. Every call must be
+     * balanced by a call to {@link #releaseDatabase()} once the caller no longer uses the database.
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @return The database instance.
+     */
+    public static SQLiteDatabase acquireDatabase(Context context) {
+        return acquireDatabase(context, DATABASE_NAME);
+    }
+
+    /**
+     * Acquire a counted handle on the single SQLiteDatabase instance of a database, creating it beforehand if needed. Every call must be balanced by
+     * a call to {@link #releaseDatabase(String)} once the caller no longer uses the database.
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @param name The name of a registered database.
+     * @return The database instance.
+     */
+    public static SQLiteDatabase acquireDatabase(Context context, String name) {
+        OpenHelper helper = getInstance(context, name);
+        synchronized (helper) {
+            SQLiteDatabase result = helper.open();
+            helper.referenceCount++;
+            return result;
+        }
+    }
+
+    /**
+     * Release a handle obtained from {@link #acquireDatabase(Context)}. When the last handle is released and the connection has not been pinned by
+     * {@link #getDatabase(Context)}, the connection is closed; the next caller will reopen it.
+     */
+    public static void releaseDatabase() {
+        releaseDatabase(DATABASE_NAME);
+    }
+
+    /**
+     * Release a handle obtained from {@link #acquireDatabase(Context, String)}. When the last handle is released and the connection has not been
+     * pinned by {@link #getDatabase(Context, String)}, the connection is closed; the next caller will reopen it.
+     *
+     * @param name The name of the database.
+     */
+    public static void releaseDatabase(String name) {
+        OpenHelper helper = helpers.get(name);
+        if (helper == null) {
+            return;
+        }
+        synchronized (helper) {
+            if (helper.referenceCount == 0) {
+                throw new IllegalStateException("releaseDatabase() called without a matching acquireDatabase()");
+            }
+            if (--helper.referenceCount == 0 && !helper.pinned) {
+                StatementCache.remove(helper.db);
+                helper.db = null;
+                helper.close();
+            }
+        }
+    }
+
+    /**
+     * Switch the default database to write-ahead logging and keep a pool of up to {@code readConnections} read-only connections. See
+     * {@link #enableWriteAheadLogging(Context, String, int)}.
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @param readConnections The maximum number of read-only connections, at least 1.
+     * @return {@code true} if write-ahead logging is enabled, {@code false} if the database does not support it (for example an in-memory database).
+     */
+    public static boolean enableWriteAheadLogging(Context context, int readConnections) {
+        return enableWriteAheadLogging(context, DATABASE_NAME, readConnections);
+    }
+
+    /**
+     * Switch a database to write-ahead logging and keep a pool of up to {@code readConnections} read-only connections. Must not be called while a
+     * transaction is in progress. Once the pool exists, further calls leave it unchanged.
+     * <p>
+     * The journal mode is set on the primary connection itself, rather than through {@link SQLiteDatabase#enableWriteAheadLogging()}, which would
+     * also let Android open its own secondary connections that never receive the {@link PragmaProfile}. The primary connection therefore still runs
+     * one statement at a time, and reads meant to run in parallel with each other or with a write, including those made through the
+     * {@link SQLiteUtils} helpers, should be given a connection from {@link #acquireReadDatabase(Context, String)}.
+     * </p>
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @param name The name of a registered database.
+     * @param readConnections The maximum number of read-only connections, at least 1.
+     * @return {@code true} if write-ahead logging is enabled, {@code false} if the database does not support it (for example an in-memory database).
+     */
+    public static boolean enableWriteAheadLogging(Context context, String name, int readConnections) {
+        OpenHelper helper = getInstance(context, name);
+        synchronized (helper) {
+            if (helper.readPool != null) {
+                return true;
+            }
+            helper.pinned = true;
+            SQLiteDatabase result = helper.open();
+            if (!setWalJournalMode(result)) {
+                return false;
+            }
+            helper.readPool = new ReadConnectionPool(result.getPath(), readConnections, helper.profile);
+            return true;
+        }
+    }
+
+    /**
+     * Switch a connection to write-ahead logging with {@code PRAGMA journal_mode}, leaving Android's connection pool at its single connection.
+     *
+     * @param db The primary connection, outside any transaction.
+     * @return {@code true} if the database now uses write-ahead logging, {@code false} if SQLite kept another journal mode or the statement failed.
+     */
+    private static boolean setWalJournalMode(SQLiteDatabase db) {
+        try {
+            return "wal".equalsIgnoreCase(DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode=WAL", null));
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Check out a connection to the default database for queries. If write-ahead logging has been enabled through
+     * {@link #enableWriteAheadLogging(Context, int)} this is a read-only connection from the pool, waiting for one to become free if necessary;
+     * otherwise it is the single primary connection. Every call must be balanced by a call to {@link #releaseReadDatabase(SQLiteDatabase)}.
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @return A connection suitable for queries.
+     */
+    public static SQLiteDatabase acquireReadDatabase(Context context) {
+        return acquireReadDatabase(context, DATABASE_NAME);
+    }
+
+    /**
+     * Check out a connection to a database for queries. If write-ahead logging has been enabled through
+     * {@link #enableWriteAheadLogging(Context, String, int)} this is a read-only connection from the pool, waiting for one to become free if
+     * necessary; otherwise it is the single primary connection. Every call must be balanced by a call to
+     * {@link #releaseReadDatabase(SQLiteDatabase)}.
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @param name The name of a registered database.
+     * @return A connection suitable for queries.
+     */
+    public static SQLiteDatabase acquireReadDatabase(Context context, String name) {
+        ReadConnectionPool pool = getInstance(context, name).readPool;
+        return pool == null ? getDatabase(context, name) : pool.acquire();
+    }
+
+    /**
+     * Return a connection obtained from {@link #acquireReadDatabase(Context)} or {@link #acquireReadDatabase(Context, String)}. Releasing a primary
+     * connection has no effect.
+     *
+     * @param db The connection to return.
+     */
+    public static void releaseReadDatabase(SQLiteDatabase db) {
+        for (OpenHelper helper : helpers.values()) {
+            ReadConnectionPool pool = helper.readPool;
+            if (pool != null && pool.owns(db)) {
+                pool.release(db);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Set the connection settings of the default database. See {@link #setPragmaProfile(Context, String, PragmaProfile)}.
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @param profile The settings, or {@code null} to leave connections opened from now on with the SQLite defaults.
+     * @return {@code true} if successful, {@code false} if the open primary connection could not be reconfigured.
+     */
+    public static boolean setPragmaProfile(Context context, PragmaProfile profile) {
+        return setPragmaProfile(context, DATABASE_NAME, profile);
+    }
+
+    /**
+     * Set the connection settings, such as {@link PragmaProfile#LOW_MEMORY}, applied to the primary connection of a database and to the read-only
+     * connections of {@link #enableWriteAheadLogging(Context, String, int)}. If the primary connection is already open, it is reconfigured
+     * immediately; pooled read-only connections are reconfigured the next time they are checked out.
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @param name The name of a registered database.
+     * @param profile The settings, or {@code null} to leave connections opened from now on with the SQLite defaults.
+     * @return {@code true} if successful, {@code false} if the open primary connection could not be reconfigured.
+     */
+    public static boolean setPragmaProfile(Context context, String name, PragmaProfile profile) {
+        OpenHelper helper = getInstance(context, name);
+        synchronized (helper) {
+            helper.profile = profile;
+            if (helper.readPool != null) {
+                helper.readPool.setProfile(profile);
+            }
+            SQLiteDatabase result = helper.db;
+            return result == null || profile == null || profile.apply(result);
+        }
+    }
+
+    /**
+     * Set the memory-mapping size of the default database. See {@link #setMmapSize(Context, String, long)}.
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @param bytes The maximum number of bytes to map, 0 to disable memory-mapped I/O.
+     * @return The size in effect on the primary connection, which is 0 if memory-mapped I/O is unavailable, or -1 if it could not be set.
+     */
+    public static long setMmapSize(Context context, long bytes) {
+        return setMmapSize(context, DATABASE_NAME, bytes);
+    }
+
+    /**
+     * Memory-map up to {@code bytes} of a database file, keeping the other settings of the current profile. The primary connection is reconfigured
+     * immediately, and each read-only connection of {@link #enableWriteAheadLogging(Context, String, int)} the next time it is checked out; these
+     * are the only connections to the database, so every read made through {@link #getDatabase(Context, String)} or
+     * {@link #acquireReadDatabase(Context, String)} uses the new size. The size is capped at {@link PragmaProfile#MAX_MMAP_SIZE}, and if it cannot
+     * be set, the connection falls back to ordinary reads.
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @param name The name of a registered database.
+     * @param bytes The maximum number of bytes to map, 0 to disable memory-mapped I/O.
+     * @return The size in effect on the primary connection, which is 0 if memory-mapped I/O is unavailable, or -1 if it could not be set. A pooled
+     * connection reports its own size through {@link PragmaProfile#read(SQLiteDatabase)} once checked out.
+     */
+    public static long setMmapSize(Context context, String name, long bytes) {
+        OpenHelper helper = getInstance(context, name);
+        synchronized (helper) {
+            helper.pinned = true;
+            SQLiteDatabase result = helper.open();
+            PragmaProfile current = helper.profile != null ? helper.profile : PragmaProfile.read(result);
+            if (current == null) {
+                return -1;
+            }
+            PragmaProfile updated = current.withMmapSize(bytes);
+            helper.profile = updated;
+            if (helper.readPool != null) {
+                helper.readPool.setProfile(updated);
+            }
+            return PragmaProfile.applyMmapSize(result, bytes);
+        }
+    }
+
+    /**
+     * Read the settings the primary connection of the default database is actually running with, opening it if needed.
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @return The effective settings, or {@code null} if they could not be read.
+     */
+    public static PragmaProfile getEffectivePragmas(Context context) {
+        return getEffectivePragmas(context, DATABASE_NAME);
+    }
+
+    /**
+     * Read the settings the primary connection of a database is actually running with, opening it if needed.
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @param name The name of a registered database.
+     * @return The effective settings, or {@code null} if they could not be read.
+     */
+    public static PragmaProfile getEffectivePragmas(Context context, String name) {
+        return PragmaProfile.read(getDatabase(context, name));
+    }
+
+    /**
+     * Return the background thread used to open databases, creating it if needed.
+     *
+     * @return The executor.
+     */
+    private static synchronized ExecutorService getOpener() {
+        if (opener == null) {
+            opener = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "OpenHelper-open");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return opener;
+    }
+
+    /**
+     * Return the helper of a database, creating it beforehand if needed.
+     *
+     * @param context The {@link Context} used to open or create the database.
+     * @param name The name of a registered database.
+     * @return The helper instance.
+     * @throws IllegalArgumentException If the database has not been registered.
+     */
+    private static OpenHelper getInstance(Context context, String name) {
+        OpenHelper result = helpers.get(name);
+        if (result == null) {
+            synchronized (OpenHelper.class) {
+                result = helpers.get(name);
+                if (result == null) {
+                    Integer version = versions.get(name);
+                    if (version == null) {
+                        throw new IllegalArgumentException("Database " + name + " has not been registered");
+                    }
+                    Migration[] steps = migrations.get(name);
+                    // Hold the application context only, never an activity
+                    result = new OpenHelper(context.getApplicationContext(), name, version, steps == null ? new Migration[0] : steps);
+                    helpers.put(name, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the primary connection, opening it if needed. Must be called while holding the helper's monitor.
+     *
+     * @return The database instance.
+     */
+    private SQLiteDatabase open() {
+        if (db == null) {
+            db = getWritableDatabase();
+        }
+        return db;
     }
 
     /**
      * Constructor.
      *
      * @param context The {@link Context} used to open the database.
+     * @param name The database file name.
+     * @param version The schema version of the database.
+     * @param steps The migration steps, in ascending version order.
      */
-    private OpenHelper(Context context) {
+    private OpenHelper(Context context, String name, int version, Migration[] steps) {
         // Pass a custom cursor factory so that query text may be logged
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        super(context, name, null, version);
+        this.version = version;
+        this.steps = steps;
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Called on API 16 and later only, before the schema is created or upgraded
+        PragmaProfile settings = profile;
+        if (settings != null) {
+            settings.apply(db);
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        PragmaProfile settings = profile;
+        if (settings != null && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            settings.apply(db);
+        }
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        // Not implemented
+        migrate(db, 0, version);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Not implemented
+        migrate(db, oldVersion, newVersion);
+    }
+
+    /**
+     * Run the migration steps after {@code oldVersion} up to {@code newVersion}. Called inside the transaction opened by {@code SQLiteOpenHelper}.
+     *
+     * @param db The database being created or upgraded.
+     * @param oldVersion The current schema version, 0 for a new database.
+     * @param newVersion The target schema version.
+     */
+    private void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        ArrayList<Migration> ran = new ArrayList<Migration>();
+        for (Migration step : steps) {
+            if (step.getVersion() > oldVersion && step.getVersion() <= newVersion) {
+                step.run(db);
+                ran.add(step);
+            }
+        }
+        applied = Collections.unmodifiableList(ran);
     }
 }
@@ -0,0 +1,291 @@
+package com.whitelightgrp.mobility.android.database;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+/**
+ * Pulls the pages of selected tables and their indexes into the operating system's file cache, so that the first queries after a cold start do not
+ * wait for the disk. <p> Each table's and index's b-tree is walked level by level straight from the database file, starting at its root page as
+ * listed in {@code sqlite_master}: the pages of each level are read in ascending file order, and the child page numbers found in interior pages
+ * make up the next level. Indexes are read before their table. SQLite's own page cache then fills from the file cache at memory speed. The scan
+ * stops early once its byte or time budget is spent or it is cancelled. Pages still held in a write-ahead log are not covered, and pages the walk
+ * reaches through a stale interior page are merely read in vain. </p>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public class PageCacheWarmer {
+
+    /**
+     * B-tree page type: interior page of an index.
+     */
+    private static final int INTERIOR_INDEX = 0x02;
+    /**
+     * B-tree page type: interior page of a table.
+     */
+    private static final int INTERIOR_TABLE = 0x05;
+    /**
+     * Size of the file header preceding the b-tree header on page 1.
+     */
+    private static final int FILE_HEADER_SIZE = 100;
+
+    /**
+     * The database whose pages are read.
+     */
+    private final SQLiteDatabase db;
+    /**
+     * The tables to warm up, in order.
+     */
+    private final List<String> tableNames;
+    /**
+     * Maximum number of bytes to read.
+     */
+    private final long maxBytes;
+    /**
+     * Maximum time to spend, in milliseconds.
+     */
+    private final long maxMillis;
+    /**
+     * {@code true} once {@link #cancel()} has been called.
+     */
+    private volatile boolean cancelled = false;
+    /**
+     * Number of pages read so far.
+     */
+    private volatile long pagesTouched = 0;
+    /**
+     * Number of bytes read so far.
+     */
+    private volatile long bytesTouched = 0;
+
+    /**
+     * Constructor for a scan without a budget.
+     *
+     * @param db The database containing the tables.
+     * @param tableNames The tables to warm up, most important first.
+     */
+    public PageCacheWarmer(SQLiteDatabase db, Collection<String> tableNames) {
+        this(db, tableNames, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param db The database containing the tables.
+     * @param tableNames The tables to warm up, most important first.
+     * @param maxBytes The maximum number of bytes to read.
+     * @param maxMillis The maximum time to spend, in milliseconds.
+     */
+    public PageCacheWarmer(SQLiteDatabase db, Collection<String> tableNames, long maxBytes, long maxMillis) {
+        this.db = db;
+        this.tableNames = new ArrayList<String>(tableNames);
+        this.maxBytes = maxBytes;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * Run the scan on a new low-priority background thread.
+     *
+     * @return A future yielding {@code true} if every page was read, {@code false} if the scan stopped early.
+     */
+    public Future<Boolean> start() {
+        FutureTask<Boolean> task = new FutureTask<Boolean>(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return run();
+            }
+        });
+        Thread thread = new Thread(task, "PageCacheWarmer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return task;
+    }
+
+    /**
+     * Run the scan on the calling thread.
+     *
+     * @return {@code true} if every page was read, {@code false} if the scan was cancelled, ran out of budget or failed.
+     */
+    public boolean run() {
+        long deadline = maxMillis == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + maxMillis * 1000000L;
+        FileInputStream in = null;
+        try {
+            int pageSize = (int) DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+            List<Long> roots = listRootPages();
+            in = new FileInputStream(db.getPath());
+            FileChannel channel = in.getChannel();
+            long pageCount = channel.size() / pageSize;
+            ByteBuffer page = ByteBuffer.allocate(pageSize);
+            Set<Long> visited = new HashSet<Long>();
+
+            for (Long root : roots) {
+                TreeSet<Long> level = new TreeSet<Long>();
+                level.add(root);
+                while (!level.isEmpty()) {
+                    TreeSet<Long> next = new TreeSet<Long>();
+                    for (Long pageNumber : level) {
+                        if (cancelled || bytesTouched + pageSize > maxBytes || System.nanoTime() > deadline) {
+                            return false;
+                        }
+                        if (pageNumber < 1 || pageNumber > pageCount || !visited.add(pageNumber)) {
+                            continue;
+                        }
+                        readPage(channel, page, pageNumber, pageSize);
+                        pagesTouched++;
+                        bytesTouched += pageSize;
+                        addChildren(page, pageNumber, next);
+                    }
+                    level = next;
+                }
+            }
+            return true;
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return false;
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        finally {
+            if (in != null) {
+                try {
+                    in.close();
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the scan before the next page is read.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Return {@code true} if {@link #cancel()} has been called.
+     *
+     * @return {@code true} if cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Return the number of pages read so far.
+     *
+     * @return The page count.
+     */
+    public long getPagesTouched() {
+        return pagesTouched;
+    }
+
+    /**
+     * Return the number of bytes read so far.
+     *
+     * @return The byte count.
+     */
+    public long getBytesTouched() {
+        return bytesTouched;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d pages, %s", pagesTouched, SQLiteUtils.humanReadableByteCount(bytesTouched, false));
+    }
+
+    /**
+     * Return the root pages of the indexes and then of the tables, in table order.
+     *
+     * @return The root page numbers.
+     */
+    private List<Long> listRootPages() {
+        ArrayList<Long> roots = new ArrayList<Long>();
+        for (String tableName : tableNames) {
+            Cursor cursor = db.query("sqlite_master", new String[] { "rootpage" }, "tbl_name=? AND type IN ('index','table') AND rootpage>0",
+                    new String[] { tableName }, null, null, "type='index' DESC");
+            try {
+                while (cursor.moveToNext()) {
+                    roots.add(cursor.getLong(0));
+                }
+            }
+            finally {
+                cursor.close();
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Read a page of the database file.
+     *
+     * @param channel The database file.
+     * @param page Receives the page, in read mode.
+     * @param pageNumber The page number, starting at 1.
+     * @param pageSize The page size in bytes.
+     * @throws IOException If the file could not be read.
+     */
+    private static void readPage(FileChannel channel, ByteBuffer page, long pageNumber, int pageSize) throws IOException {
+        page.clear();
+        long position = (pageNumber - 1) * pageSize;
+        while (page.hasRemaining()) {
+            if (channel.read(page, position + page.position()) < 0) {
+                break;
+            }
+        }
+        page.flip();
+    }
+
+    /**
+     * Collect the child page numbers of an interior b-tree page. Leaf pages have no children.
+     *
+     * @param page The page, in read mode.
+     * @param pageNumber The page number, starting at 1.
+     * @param children Receives the child page numbers.
+     */
+    private static void addChildren(ByteBuffer page, long pageNumber, Set<Long> children) {
+        int header = pageNumber == 1 ? FILE_HEADER_SIZE : 0;
+        if (page.limit() < header + 12) {
+            return;
+        }
+        int type = page.get(header) & 0xFF;
+        if (type != INTERIOR_INDEX && type != INTERIOR_TABLE) {
+            return;
+        }
+        int cellCount = page.getShort(header + 3) & 0xFFFF;
+        children.add(page.getInt(header + 8) & 0xFFFFFFFFL);
+        for (int i = 0; i < cellCount; i++) {
+            int pointer = header + 12 + i * 2;
+            if (pointer + 2 > page.limit()) {
+                return;
+            }
+            int cell = page.getShort(pointer) & 0xFFFF;
+            if (cell + 4 <= page.limit()) {
+                // Each interior cell starts with its left child page number
+                children.add(page.getInt(cell) & 0xFFFFFFFFL);
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.whitelightgrp.mobility.android.database;
+
+import java.util.Locale;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+/**
+ * A set of connection settings applied to every connection {@link OpenHelper} opens. <p> Three profiles are predefined: {@link #LOW_MEMORY} for
+ * handhelds with little RAM, {@link #THROUGHPUT} for devices that run large syncs and lookups, and {@link #DURABLE} for data that must survive a
+ * power loss. Use {@link #read(SQLiteDatabase)} to find out which values a connection actually runs with, since SQLite silently ignores or caps
+ * some of them (for example, {@code mmap_size} is 0 on builds without memory-mapped I/O). Memory mapping is capped at {@link #MAX_MMAP_SIZE},
+ * and turned off again if it cannot be set. </p>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public class PragmaProfile {
+
+    /**
+     * {@code synchronous} level: no syncs at all.
+     */
+    public static final int SYNCHRONOUS_OFF = 0;
+    /**
+     * {@code synchronous} level: sync at critical moments only. Safe with write-ahead logging.
+     */
+    public static final int SYNCHRONOUS_NORMAL = 1;
+    /**
+     * {@code synchronous} level: sync at every commit.
+     */
+    public static final int SYNCHRONOUS_FULL = 2;
+    /**
+     * Largest {@code mmap_size} applied, whatever a profile asks for, so that a large database does not exhaust the address space of a 32-bit
+     * process.
+     */
+    public static final long MAX_MMAP_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * Small page cache, no memory mapping and a small journal, for handhelds with little RAM.
+     */
+    public static final PragmaProfile LOW_MEMORY = new PragmaProfile("low-memory", 512, 0, SYNCHRONOUS_NORMAL, 512 * 1024);
+    /**
+     * Large page cache and memory-mapped reads, for bulk loads and read-heavy lookups.
+     */
+    public static final PragmaProfile THROUGHPUT = new PragmaProfile("throughput", 8 * 1024, 64L * 1024 * 1024, SYNCHRONOUS_NORMAL, 4 * 1024 * 1024);
+    /**
+     * Sync at every commit, for data that must survive a power loss.
+     */
+    public static final PragmaProfile DURABLE = new PragmaProfile("durable", 2 * 1024, 0, SYNCHRONOUS_FULL, -1);
+
+    /**
+     * Name of the profile, for logging.
+     */
+    private final String name;
+    /**
+     * Page cache size in KiB.
+     */
+    private final long cacheSizeKiB;
+    /**
+     * Maximum number of bytes of the database file to memory-map, 0 to disable.
+     */
+    private final long mmapSize;
+    /**
+     * One of the {@code SYNCHRONOUS_*} levels.
+     */
+    private final int synchronous;
+    /**
+     * Size in bytes a journal is truncated to after a transaction, or -1 for no limit.
+     */
+    private final long journalSizeLimit;
+
+    /**
+     * Constructor.
+     *
+     * @param name The name of the profile, for logging.
+     * @param cacheSizeKiB The page cache size in KiB.
+     * @param mmapSize The maximum number of bytes of the database file to memory-map, 0 to disable memory-mapped I/O.
+     * @param synchronous One of {@link #SYNCHRONOUS_OFF}, {@link #SYNCHRONOUS_NORMAL} or {@link #SYNCHRONOUS_FULL}.
+     * @param journalSizeLimit The size in bytes a rollback journal or write-ahead log is truncated to after a transaction, or -1 for no limit.
+     */
+    public PragmaProfile(String name, long cacheSizeKiB, long mmapSize, int synchronous, long journalSizeLimit) {
+        this.name = name;
+        this.cacheSizeKiB = cacheSizeKiB;
+        this.mmapSize = mmapSize;
+        this.synchronous = synchronous;
+        this.journalSizeLimit = journalSizeLimit;
+    }
+
+    /**
+     * Read the settings a connection is currently running with.
+     *
+     * @param db The connection.
+     * @return The effective settings, named "effective", or {@code null} if they could not be read.
+     */
+    public static PragmaProfile read(SQLiteDatabase db) {
+        try {
+            long cacheSize = queryPragma(db, "cache_size", 0);
+            if (cacheSize > 0) {
+                // A positive size is a number of pages
+                cacheSize = cacheSize * queryPragma(db, "page_size", 0) / 1024;
+            }
+            else {
+                cacheSize = -cacheSize;
+            }
+            return new PragmaProfile(
+                    "effective",
+                    cacheSize,
+                    queryPragma(db, "mmap_size", 0),
+                    (int) queryPragma(db, "synchronous", SYNCHRONOUS_FULL),
+                    queryPragma(db, "journal_size_limit", -1)
+            );
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Apply the settings to a connection. Must not be called inside a transaction.
+     *
+     * @param db The connection.
+     * @return {@code true} if successful, {@code false} if any setting could not be applied.
+     */
+    public boolean apply(SQLiteDatabase db) {
+        try {
+            setPragma(db, "cache_size", -cacheSizeKiB);
+            setPragma(db, "synchronous", synchronous);
+            setPragma(db, "journal_size_limit", journalSizeLimit);
+            return applyMmapSize(db, mmapSize) >= 0;
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Return a copy of this profile with a different memory-mapping size.
+     *
+     * @param bytes The maximum number of bytes of the database file to memory-map, 0 to disable memory-mapped I/O.
+     * @return The new profile.
+     */
+    public PragmaProfile withMmapSize(long bytes) {
+        return new PragmaProfile(name, cacheSizeKiB, bytes, synchronous, journalSizeLimit);
+    }
+
+    /**
+     * Return the name of the profile.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Return the page cache size.
+     *
+     * @return The size in KiB.
+     */
+    public long getCacheSizeKiB() {
+        return cacheSizeKiB;
+    }
+
+    /**
+     * Return the maximum number of bytes of the database file to memory-map.
+     *
+     * @return The size in bytes, 0 if memory-mapped I/O is disabled.
+     */
+    public long getMmapSize() {
+        return mmapSize;
+    }
+
+    /**
+     * Return the {@code synchronous} level.
+     *
+     * @return One of the {@code SYNCHRONOUS_*} levels.
+     */
+    public int getSynchronous() {
+        return synchronous;
+    }
+
+    /**
+     * Return the size a journal is truncated to after a transaction.
+     *
+     * @return The size in bytes, or -1 for no limit.
+     */
+    public long getJournalSizeLimit() {
+        return journalSizeLimit;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                Locale.US,
+                "%s: cache_size %d KiB, mmap_size %d, synchronous %d, journal_size_limit %d",
+                name,
+                cacheSizeKiB,
+                mmapSize,
+                synchronous,
+                journalSizeLimit
+        );
+    }
+
+    /**
+     * Set {@code mmap_size}, capped at {@link #MAX_MMAP_SIZE}, and read it back to find the size SQLite actually applied. If it cannot be set,
+     * memory mapping is turned off again and the connection falls back to ordinary reads.
+     *
+     * @param db The connection.
+     * @param bytes The requested size in bytes, 0 to disable memory-mapped I/O.
+     * @return The effective size in bytes, as reported by {@code PRAGMA mmap_size}, which is 0 if SQLite was built without memory-mapped I/O or the
+     * fallback was taken, or -1 if {@code mmap_size} could not be set at all.
+     */
+    static long applyMmapSize(SQLiteDatabase db, long bytes) {
+        long requested = Math.max(0, Math.min(bytes, MAX_MMAP_SIZE));
+        try {
+            setPragma(db, "mmap_size", requested);
+            // SQLite silently lowers the size to its compile-time limit, or to 0 where memory-mapped I/O is unavailable
+            return queryPragma(db, "mmap_size", 0);
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+        }
+        if (requested == 0) {
+            return -1;
+        }
+        try {
+            setPragma(db, "mmap_size", 0);
+            return 0;
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Set a numeric pragma. Some pragmas report their new value as a row, which is read and discarded.
+     *
+     * @param db The connection.
+     * @param pragma The pragma name.
+     * @param value The new value.
+     */
+    static void setPragma(SQLiteDatabase db, String pragma, long value) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma + "=" + value, null);
+        try {
+            cursor.moveToFirst();
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Read a numeric pragma.
+     *
+     * @param db The connection.
+     * @param pragma The pragma name.
+     * @param defaultValue The value to return if the pragma returns no row, as unsupported pragmas do.
+     * @return The value.
+     */
+    static long queryPragma(SQLiteDatabase db, String pragma, long defaultValue) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : defaultValue;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+}
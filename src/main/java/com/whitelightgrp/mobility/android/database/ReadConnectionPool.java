@@ -0,0 +1,177 @@
+package com.whitelightgrp.mobility.android.database;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+/**
+ * A bounded pool of read-only connections to a single database file. <p> When the database uses write-ahead logging, a read-only connection sees
+ * the last committed state and never waits for the writer, so queries made on pooled connections run in parallel with an in-progress write
+ * transaction on the primary connection. {@link OpenHelper#enableWriteAheadLogging(android.content.Context, String, int)} keeps Android from opening
+ * connections of its own, so the connections of this pool are the only ones besides the primary connection, and every one of them receives the
+ * {@link PragmaProfile}. </p>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public class ReadConnectionPool {
+
+    /**
+     * Absolute path of the database file.
+     */
+    private final String path;
+    /**
+     * Maximum number of connections the pool will open.
+     */
+    private final int size;
+    /**
+     * Settings applied to each connection as it is checked out, or {@code null} to keep the SQLite defaults.
+     */
+    private volatile PragmaProfile profile;
+    /**
+     * The settings last applied to each connection.
+     */
+    private final Map<SQLiteDatabase, PragmaProfile> applied = new ConcurrentHashMap<SQLiteDatabase, PragmaProfile>();
+    /**
+     * Permits for connections that are not currently checked out.
+     */
+    private final Semaphore available;
+    /**
+     * Open connections that are not currently checked out.
+     */
+    private final ConcurrentLinkedQueue<SQLiteDatabase> idle = new ConcurrentLinkedQueue<SQLiteDatabase>();
+    /**
+     * Every connection opened by this pool.
+     */
+    private final Set<SQLiteDatabase> members = Collections.newSetFromMap(new ConcurrentHashMap<SQLiteDatabase, Boolean>());
+    /**
+     * {@code true} once {@link #close()} has been called.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor. Connections are opened lazily, as they are first needed.
+     *
+     * @param path The absolute path of the database file.
+     * @param size The maximum number of read-only connections to open.
+     */
+    public ReadConnectionPool(String path, int size) {
+        this(path, size, null);
+    }
+
+    /**
+     * Constructor. Connections are opened lazily, as they are first needed.
+     *
+     * @param path The absolute path of the database file.
+     * @param size The maximum number of read-only connections to open.
+     * @param profile The settings applied to each connection, or {@code null} to keep the SQLite defaults.
+     */
+    public ReadConnectionPool(String path, int size, PragmaProfile profile) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.path = path;
+        this.size = size;
+        this.profile = profile;
+        this.available = new Semaphore(size, true);
+    }
+
+    /**
+     * Check out a read-only connection, waiting for one to be released if all are in use. Every call must be balanced by a call to
+     * {@link #release(SQLiteDatabase)}.
+     *
+     * @return A read-only connection.
+     * @throws SQLiteException If the pool has been closed or a connection could not be opened.
+     */
+    public SQLiteDatabase acquire() {
+        if (closed) {
+            throw new SQLiteException("Read connection pool is closed");
+        }
+        available.acquireUninterruptibly();
+        SQLiteDatabase db = idle.poll();
+        if (db == null) {
+            try {
+                db = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY);
+            }
+            catch (SQLiteException e) {
+                available.release();
+                throw e;
+            }
+            members.add(db);
+        }
+        PragmaProfile settings = profile;
+        if (settings != null && applied.get(db) != settings) {
+            settings.apply(db);
+            applied.put(db, settings);
+        }
+        return db;
+    }
+
+    /**
+     * Return a connection obtained from {@link #acquire()} to the pool.
+     *
+     * @param db The connection to return.
+     */
+    public void release(SQLiteDatabase db) {
+        if (db == null || !members.contains(db)) {
+            return;
+        }
+        if (closed) {
+            members.remove(db);
+            applied.remove(db);
+            StatementCache.remove(db);
+            db.close();
+        }
+        else {
+            idle.offer(db);
+        }
+        available.release();
+    }
+
+    /**
+     * Return {@code true} if {@code db} was opened by this pool.
+     *
+     * @param db The connection to test.
+     * @return {@code true} if the connection belongs to this pool.
+     */
+    public boolean owns(SQLiteDatabase db) {
+        return members.contains(db);
+    }
+
+    /**
+     * Change the settings of the pooled connections. Each connection is reconfigured the next time it is checked out.
+     *
+     * @param profile The settings, or {@code null} to leave connections with their current settings.
+     */
+    public void setProfile(PragmaProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Return the maximum number of connections in the pool.
+     *
+     * @return The pool size.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Close all idle connections. Connections still checked out are closed as they are released.
+     */
+    public void close() {
+        closed = true;
+        SQLiteDatabase db;
+        while ((db = idle.poll()) != null) {
+            members.remove(db);
+            applied.remove(db);
+            StatementCache.remove(db);
+            db.close();
+        }
+    }
+}
@@ -1,23 +1,62 @@
 package com.whitelightgrp.mobility.android.database;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 
 /**
- * Provides several useful methods to simplify working with a SQLiteDatabase.
+ * Provides several useful methods to simplify working with a SQLiteDatabase. <p> The scalar {@code safeQueryFor*} and {@code queryFor*} helpers,
+ * except {@code safeQueryForByteArray}, run through the connection's {@link StatementCache}, so repeated lookups are compiled once and read
+ * without a {@code Cursor}. </p>
  *
  * @author Justin Rohde, WhiteLight Group
  */
 public class SQLiteUtils {
+    /**
+     * Matches the start of a {@code CREATE TABLE} or {@code CREATE INDEX} statement, up to the name of the object being created.
+     */
+    private static final Pattern CREATE_PREFIX = Pattern.compile(
+            "\\s*CREATE\\s+(?:UNIQUE\\s+)?(?:TABLE|INDEX)\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?",
+            Pattern.CASE_INSENSITIVE
+    );
+    /**
+     * The SQLite library version, once read.
+     */
+    private static volatile String sqliteVersion = null;
+
     /**
      * Copy all records from the source table into the destination table, optionally filtering the source records. <p> If the primary keys exist for a
-     * record, the existing record is replaced. </p>
+     * record, the existing record is replaced. Only the columns present in both tables are copied. </p>
      *
      * @param db The database containing the source and destination table.
      * @param destinationTable The destination table name.
@@ -28,7 +67,7 @@ public class SQLiteUtils {
      * @param conflictAlgorithm The algorithm to use on conflict.  One of {@link SQLiteDatabase#CONFLICT_ROLLBACK}, {@link
      * SQLiteDatabase#CONFLICT_REPLACE}, {@link SQLiteDatabase#CONFLICT_FAIL}, {@link SQLiteDatabase#CONFLICT_ABORT}, {@link
      * SQLiteDatabase#CONFLICT_NONE}, {@link SQLiteDatabase#CONFLICT_IGNORE}.
-     * @return The number of records copied, or -1 if an error occurred.
+     * @return The number of records inserted into the destination table, or -1 if an error occurred.
      */
     public static long copyRecords(
             SQLiteDatabase db,
@@ -38,54 +77,128 @@ public class SQLiteUtils {
             String[] whereArgs,
             int conflictAlgorithm
     ) {
-        // Build list of column names
-        StringBuilder sb = new StringBuilder();
-        Cursor cursor = db.query(sourceTable, null, null, null, null, null, null, "1");
-        for (int i = 0; i < cursor.getColumnCount(); i++) {
-            if (sb.length() > 0) {
-                sb.append(',');
-            }
-            sb.append(cursor.getColumnName(i));
+        return copyRecords(db, destinationTable, sourceTable, whereClause, (Object[]) whereArgs, conflictAlgorithm);
+    }
+
+    /**
+     * Copy all records from the source table into the destination table, optionally filtering the source records. <p> If the primary keys exist for a
+     * record, the existing record is replaced. Only the columns present in both tables are copied. </p>
+     *
+     * @param db The database containing the source and destination table.
+     * @param destinationTable The destination table name.
+     * @param sourceTable The source table name.
+     * @param whereClause Optional SQL {@code WHERE} clause to apply to the source record set. Use {@code null} to select all records in the source
+     * table.
+     * @param whereArgs Arguments for the optional SQL {@code WHERE} clause, or {@code null} if there are no arguments. Each value is bound
+     * according to its type, as for {@link #safeQueryForLong(SQLiteDatabase, String, String, String, Object[])}.
+     * @param conflictAlgorithm The algorithm to use on conflict.  One of {@link SQLiteDatabase#CONFLICT_ROLLBACK}, {@link
+     * SQLiteDatabase#CONFLICT_REPLACE}, {@link SQLiteDatabase#CONFLICT_FAIL}, {@link SQLiteDatabase#CONFLICT_ABORT}, {@link
+     * SQLiteDatabase#CONFLICT_NONE}, {@link SQLiteDatabase#CONFLICT_IGNORE}.
+     * @return The number of records inserted into the destination table, or -1 if an error occurred.
+     */
+    public static long copyRecords(
+            SQLiteDatabase db,
+            String destinationTable,
+            String sourceTable,
+            String whereClause,
+            Object[] whereArgs,
+            int conflictAlgorithm
+    ) {
+        return copyRecords(db, destinationTable, sourceTable, null, null, whereClause, whereArgs, conflictAlgorithm);
+    }
+
+    /**
+     * Copy all records from the source table into a destination table with a different schema, optionally filtering the source records. <p> The
+     * copy still runs as a single {@code INSERT ... SELECT}. Destination columns are filled from {@code columnMap} if it is given, otherwise from
+     * the source columns of the same name. Destination columns left without a source are filled from {@code defaultValues}, or by the column's own
+     * {@code DEFAULT} if they have no entry there either. Column lists are read with {@code PRAGMA table_info} through {@link SchemaCache}. </p>
+     *
+     * @param db The database containing the source and destination table.
+     * @param destinationTable The destination table name.
+     * @param sourceTable The source table name.
+     * @param columnMap Maps each destination column to the source column, or any SQL expression over the source row, that fills it. Use {@code null}
+     * to copy the columns present in both tables.
+     * @param defaultValues Maps destination columns that have no source to the value to store in them, bound according to its type as for
+     * {@link #safeQueryForLong(SQLiteDatabase, String, String, String, Object[])}. Entries for columns that do have a source are ignored. May be
+     * {@code null}.
+     * @param whereClause Optional SQL {@code WHERE} clause to apply to the source record set. Use {@code null} to select all records in the source
+     * table.
+     * @param whereArgs Arguments for the optional SQL {@code WHERE} clause, or {@code null} if there are no arguments. Each value is bound
+     * according to its type, as for {@link #safeQueryForLong(SQLiteDatabase, String, String, String, Object[])}.
+     * @param conflictAlgorithm The algorithm to use on conflict.  One of {@link SQLiteDatabase#CONFLICT_ROLLBACK}, {@link
+     * SQLiteDatabase#CONFLICT_REPLACE}, {@link SQLiteDatabase#CONFLICT_FAIL}, {@link SQLiteDatabase#CONFLICT_ABORT}, {@link
+     * SQLiteDatabase#CONFLICT_NONE}, {@link SQLiteDatabase#CONFLICT_IGNORE}.
+     * @return The number of records inserted into the destination table, or -1 if an error occurred or no column could be mapped.
+     */
+    public static long copyRecords(
+            SQLiteDatabase db,
+            String destinationTable,
+            String sourceTable,
+            Map<String, String> columnMap,
+            Map<String, Object> defaultValues,
+            String whereClause,
+            Object[] whereArgs,
+            int conflictAlgorithm
+    ) {
+        // Read once, for every column lookup of this copy
+        long schemaVersion = SchemaCache.readSchemaVersion(db);
+        List<String> destinationColumns = schemaVersion < 0 ? null : SchemaCache.getColumnNames(db, destinationTable, schemaVersion);
+        if (destinationColumns == null) {
+            return -1;
         }
-        cursor.close();
 
-        long count;
-        try {
-            count = DatabaseUtils.queryNumEntries(db, sourceTable, whereClause, whereArgs);
+        // Work out which source expression fills each destination column
+        Map<String, String> sources;
+        if (columnMap != null) {
+            sources = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+            sources.putAll(columnMap);
         }
-        catch (SQLiteException e) {
-            e.printStackTrace();
-            count = 0;
+        else {
+            List<String> columns = commonColumns(db, destinationTable, sourceTable, schemaVersion);
+            if (columns == null) {
+                return -1;
+            }
+            sources = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+            for (String column : columns) {
+                sources.put(column, quoteIdentifier(column));
+            }
+        }
+        Map<String, Object> defaults = new TreeMap<String, Object>(String.CASE_INSENSITIVE_ORDER);
+        if (defaultValues != null) {
+            defaults.putAll(defaultValues);
         }
 
-        String conflictAlgorithmText;
-        switch (conflictAlgorithm) {
-            case SQLiteDatabase.CONFLICT_IGNORE:
-                conflictAlgorithmText = "OR IGNORE ";
-                break;
-            case SQLiteDatabase.CONFLICT_ABORT:
-                conflictAlgorithmText = "OR ABORT ";
-                break;
-            case SQLiteDatabase.CONFLICT_FAIL:
-                conflictAlgorithmText = "OR FAIL ";
-                break;
-            case SQLiteDatabase.CONFLICT_REPLACE:
-                conflictAlgorithmText = "OR REPLACE ";
-                break;
-            case SQLiteDatabase.CONFLICT_ROLLBACK:
-                conflictAlgorithmText = "OR ROLLBACK ";
-                break;
-            case SQLiteDatabase.CONFLICT_NONE:
-            default:
-                conflictAlgorithmText = "";
-                break;
+        // Build the insert and select lists in destination column order
+        ArrayList<String> insertColumns = new ArrayList<String>();
+        StringBuilder selectList = new StringBuilder();
+        ArrayList<Object> args = new ArrayList<Object>();
+        for (String column : destinationColumns) {
+            String expression = sources.get(column);
+            if (expression == null) {
+                if (!defaults.containsKey(column)) {
+                    continue;
+                }
+                expression = "?";
+                args.add(defaults.get(column));
+            }
+            insertColumns.add(column);
+            if (selectList.length() > 0) {
+                selectList.append(',');
+            }
+            selectList.append(expression);
+        }
+        if (insertColumns.isEmpty()) {
+            return -1;
+        }
+        if (whereArgs != null) {
+            Collections.addAll(args, whereArgs);
         }
 
         String sql = String.format(
-                "INSERT " + conflictAlgorithmText + "INTO %s(%s) SELECT %s FROM %s",
+                "INSERT " + conflictClause(conflictAlgorithm) + "INTO %s(%s) SELECT %s FROM %s",
                 destinationTable,
-                sb,
-                sb,
+                joinColumns(insertColumns),
+                selectList,
                 sourceTable
         );
 
@@ -93,12 +206,192 @@ public class SQLiteUtils {
             sql += " WHERE " + whereClause;
         }
 
-        if (safeExecSql(db, sql, whereArgs)) {
-            return count;
+        // The number of rows inserted is reported by the statement itself, so the source is scanned only once
+        return safeExecuteForChangedRowCount(db, sql, args.toArray());
+    }
+
+    /**
+     * Rebuild a table with a new schema, keeping its rows, by the create-copy-swap pattern. <p> A table with the new schema is created under a
+     * temporary name, the rows are copied into it with a single {@code INSERT ... SELECT} through
+     * {@link #copyRecords(SQLiteDatabase, String, String, Map, Map, String, Object[], int)}, the old table is dropped and the new one renamed in its
+     * place. The indexes are created last, so each is built in one sorted pass. If the table is tracked by {@link ChangeTracker}, its triggers,
+     * which the drop removes, are installed again on the new table, so the rebuild itself is not logged as changes. Everything runs in one
+     * transaction, nested in the caller's if there is one. Turn {@code PRAGMA foreign_keys} off beforehand if other tables reference this one. </p>
+     *
+     * @param db The database containing the table.
+     * @param tableName The table to rebuild.
+     * @param createSql The {@code CREATE TABLE} statement of the new schema, naming the table {@code tableName}.
+     * @param columnMap Maps each new column to the old column, or any SQL expression over the old row, that fills it. Use {@code null} to copy the
+     * columns present in both schemas.
+     * @param defaultValues Maps new columns that have no source to the value to store in them. May be {@code null}.
+     * @param indexSql The {@code CREATE INDEX} statements of the new schema, or {@code null} to recreate the indexes the table has now.
+     * @return The number of rows copied, the time taken to create, copy and swap the table, and the index build time, or {@code null} if an error
+     * occurred or a tracked table's new schema has no single-column primary key, in which case the table is left unchanged.
+     */
+    public static TableTimings rebuildTable(
+            SQLiteDatabase db,
+            String tableName,
+            String createSql,
+            Map<String, String> columnMap,
+            Map<String, Object> defaultValues,
+            List<String> indexSql
+    ) {
+        String rebuildName = tableName + "_rebuild";
+        TableTimings timings = new TableTimings(tableName);
+        db.beginTransaction();
+        try {
+            long start = System.nanoTime();
+            if (indexSql == null) {
+                indexSql = listIndexSql(db, null, tableName);
+            }
+
+            // Create the new table beside the old one and fill it
+            db.execSQL("DROP TABLE IF EXISTS " + quoteIdentifier(rebuildName));
+            db.execSQL(renameCreateSql(createSql, rebuildName));
+            SchemaCache.invalidate(db, rebuildName);
+            long count = copyRecords(db, rebuildName, tableName, columnMap, defaultValues, null, null, SQLiteDatabase.CONFLICT_NONE);
+            if (count == -1) {
+                return null;
+            }
+
+            // Swap the new table in, which also drops the old indexes and triggers
+            boolean tracked = ChangeTracker.isEnabled(db, tableName);
+            db.execSQL("DROP TABLE " + quoteIdentifier(tableName));
+            db.execSQL("ALTER TABLE " + quoteIdentifier(rebuildName) + " RENAME TO " + quoteIdentifier(tableName));
+            SchemaCache.invalidate(db, rebuildName);
+            SchemaCache.invalidate(db, tableName);
+            if (tracked && !ChangeTracker.enable(db, tableName)) {
+                return null;
+            }
+            timings.setRowCount(count);
+            timings.addLoadNanos(System.nanoTime() - start);
+
+            // Build the indexes now that the data is in place
+            start = System.nanoTime();
+            for (String createIndex : indexSql) {
+                db.execSQL(createIndex);
+            }
+            timings.addIndexNanos(System.nanoTime() - start);
+
+            db.setTransactionSuccessful();
+            return timings;
         }
-        else {
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+        finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Copy records from the source table into the destination table in bounded chunks, committing after each chunk. <p> Rows are copied in ascending
+     * order of an integer key, either the {@code rowid} or an {@code INTEGER PRIMARY KEY} column, so that each chunk is a range seek rather than a
+     * scan. Only the columns present in both tables are copied. The write lock is released between chunks, the journal never holds more than one
+     * chunk, and the copy can be cancelled and later resumed from the last committed key. Do not call this inside a transaction, or the chunks will
+     * not be committed separately. </p>
+     *
+     * @param db The database containing the source and destination table.
+     * @param destinationTable The destination table name.
+     * @param sourceTable The source table name.
+     * @param keyColumn The integer key column of the source table, or {@code null} to use the {@code rowid}.
+     * @param whereClause Optional SQL {@code WHERE} clause to apply to the source record set. Use {@code null} to select all records in the source
+     * table.
+     * @param whereArgs Arguments for the optional SQL {@code WHERE} clause, or {@code null} if there are no arguments. Each value is bound
+     * according to its type, as for {@link #safeQueryForLong(SQLiteDatabase, String, String, String, Object[])}.
+     * @param conflictAlgorithm The algorithm to use on conflict.  One of {@link SQLiteDatabase#CONFLICT_ROLLBACK}, {@link
+     * SQLiteDatabase#CONFLICT_REPLACE}, {@link SQLiteDatabase#CONFLICT_FAIL}, {@link SQLiteDatabase#CONFLICT_ABORT}, {@link
+     * SQLiteDatabase#CONFLICT_NONE}, {@link SQLiteDatabase#CONFLICT_IGNORE}.
+     * @param chunkSize The maximum number of source rows per chunk.
+     * @param startAfterKey Copy only rows whose key is greater than this value. Use {@link Long#MIN_VALUE} to start from the beginning, or the last
+     * key reported to the listener to resume an interrupted copy.
+     * @param listener Receives progress after each chunk and may cancel the copy, or {@code null}.
+     * @return The number of records inserted into the destination table, including those of chunks committed before a cancellation, or -1 if an
+     * error occurred. Chunks committed before an error remain committed.
+     */
+    public static long copyRecordsChunked(
+            SQLiteDatabase db,
+            String destinationTable,
+            String sourceTable,
+            String keyColumn,
+            String whereClause,
+            Object[] whereArgs,
+            int conflictAlgorithm,
+            int chunkSize,
+            long startAfterKey,
+            CopyProgressListener listener
+    ) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+
+        // Build list of column names
+        List<String> columns = commonColumns(db, destinationTable, sourceTable, SchemaCache.readSchemaVersion(db));
+        if (columns == null) {
             return -1;
         }
+        String columnList = joinColumns(columns);
+        String key = keyColumn == null ? "rowid" : keyColumn;
+        String filter = whereClause == null ? "" : " AND (" + whereClause + ")";
+
+        // The upper key of a full chunk, and of the final partial chunk
+        String chunkEndSql = "SELECT " + key + " FROM " + sourceTable + " WHERE " + key + " > ?" + filter
+                + " ORDER BY " + key + " LIMIT 1 OFFSET " + (chunkSize - 1);
+        String lastKeySql = "SELECT max(" + key + ") FROM " + sourceTable + " WHERE " + key + " > ?" + filter;
+        String sql = String.format(
+                "INSERT " + conflictClause(conflictAlgorithm) + "INTO %s(%s) SELECT %s FROM %s WHERE %s > ? AND %s <= ?%s",
+                destinationTable,
+                columnList,
+                columnList,
+                sourceTable,
+                key,
+                key,
+                filter
+        );
+
+        StatementCache statements = StatementCache.forDatabase(db);
+        long total = 0;
+        long lastKey = startAfterKey;
+        while (listener == null || !listener.isCancelled()) {
+            Object[] boundArgs = prependArgs(whereArgs, lastKey);
+            Long chunkEnd;
+            try {
+                try {
+                    chunkEnd = statements.simpleQueryForLong(chunkEndSql, boundArgs);
+                }
+                catch (SQLiteDoneException e) {
+                    // Fewer than chunkSize rows remain
+                    String max = statements.simpleQueryForString(lastKeySql, boundArgs);
+                    chunkEnd = max == null ? null : Long.valueOf(max);
+                }
+            }
+            catch (SQLiteException e) {
+                e.printStackTrace();
+                return -1;
+            }
+            if (chunkEnd == null) {
+                break;
+            }
+
+            db.beginTransaction();
+            try {
+                long count = safeExecuteForChangedRowCount(db, sql, prependArgs(whereArgs, lastKey, chunkEnd));
+                if (count == -1) {
+                    return -1;
+                }
+                total += count;
+                lastKey = chunkEnd;
+                if (listener != null) {
+                    listener.onChunkCopied(db, total, lastKey);
+                }
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+        }
+        return total;
     }
 
     /**
@@ -117,6 +410,23 @@ public class SQLiteUtils {
         return safeQueryForByteArray(db, tableName, column, selection, selectionArgs, null, null, null);
     }
 
+    /**
+     * Convenience method to retrieve a single byte array.
+     *
+     * @param db The database to query.
+     * @param tableName The table name to compile the query against.
+     * @param column The column to return.
+     * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE itself). Passing null will
+     * return all rows for the given table.
+     * @param selectionArgs You may include ?s in selection, which will be replaced by the values from selectionArgs, in order that they appear in the
+     * selection. Each value is bound according to its type: {@code null} as NULL, {@code Long}, {@code Integer} and other integral
+     * numbers as INTEGER, {@code Boolean} as 0 or 1, {@code Double} and {@code Float} as REAL, {@code byte[]} as a BLOB and anything else as TEXT.
+     * @return The single {@code byte[]} result. Set to {@code null} if an error occurred.
+     */
+    public static byte[] safeQueryForByteArray(SQLiteDatabase db, String tableName, String column, String selection, Object[] selectionArgs) {
+        return safeQueryForByteArray(db, tableName, column, selection, selectionArgs, null, null, null);
+    }
+
     /**
      * Convenience method to retrieve a single byte array.
      *
@@ -145,7 +455,39 @@ public class SQLiteUtils {
             String having,
             String orderBy
     ) {
-        Cursor cursor = db.query(tableName, new String[] { column }, selection, selectionArgs, groupBy, having, orderBy, "1");
+        return safeQueryForByteArray(db, tableName, column, selection, (Object[]) selectionArgs, groupBy, having, orderBy);
+    }
+
+    /**
+     * Convenience method to retrieve a single byte array.
+     *
+     * @param db The database to query.
+     * @param tableName The table name to compile the query against.
+     * @param column The column to return.
+     * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE itself). Passing null will
+     * return all rows for the given table.
+     * @param selectionArgs You may include ?s in selection, which will be replaced by the values from selectionArgs, in order that they appear in the
+     * selection. Each value is bound according to its type: {@code null} as NULL, {@code Long}, {@code Integer} and other integral
+     * numbers as INTEGER, {@code Boolean} as 0 or 1, {@code Double} and {@code Float} as REAL, {@code byte[]} as a BLOB and anything else as TEXT.
+     * @param groupBy A filter declaring how to group rows, formatted as an SQL GROUP BY clause (excluding the GROUP BY itself). Passing null will
+     * cause the rows to not be grouped.
+     * @param having A filter declare which row groups to include in the cursor, if row grouping is being used, formatted as an SQL HAVING clause
+     * (excluding the HAVING itself). Passing null will cause all row groups to be included, and is required when row grouping is not being used.
+     * @param orderBy How to order the rows, formatted as an SQL ORDER BY clause (excluding the ORDER BY itself). Passing null will use the default
+     * sort order, which may be unordered.
+     * @return The single {@code byte[]} result. Set to {@code null} if an error occurred.
+     */
+    public static byte[] safeQueryForByteArray(
+            SQLiteDatabase db,
+            String tableName,
+            String column,
+            String selection,
+            Object[] selectionArgs,
+            String groupBy,
+            String having,
+            String orderBy
+    ) {
+        Cursor cursor = rawQuery(db, buildScalarQuery(tableName, column, selection, groupBy, having, orderBy), selectionArgs);
         try {
             return cursor.moveToFirst() ? cursor.getBlob(0) : null;
         }
@@ -172,8 +514,28 @@ public class SQLiteUtils {
      * @return The number of records in the selection, or 0 if the table does not exist.
      */
     public static long safeQueryForCount(SQLiteDatabase db, String tableName, String selection, String[] selectionArgs) {
+        return safeQueryForCount(db, tableName, selection, (Object[]) selectionArgs);
+    }
+
+    /**
+     * Return the count of all records in a table matching a selection.
+     *
+     * @param db The database containing the table to query.
+     * @param tableName The table name to compile the query against.
+     * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE itself). Passing null will
+     * return all rows for the given table.
+     * @param selectionArgs You may include ?s in selection, which will be replaced by the values from selectionArgs, in order that they appear in the
+     * selection. Each value is bound according to its type: {@code null} as NULL, {@code Long}, {@code Integer} and other integral
+     * numbers as INTEGER, {@code Boolean} as 0 or 1, {@code Double} and {@code Float} as REAL, {@code byte[]} as a BLOB and anything else as TEXT.
+     * @return The number of records in the selection, or 0 if the table does not exist.
+     */
+    public static long safeQueryForCount(SQLiteDatabase db, String tableName, String selection, Object[] selectionArgs) {
+        String sql = "SELECT count(*) FROM " + tableName;
+        if (selection != null && selection.length() > 0) {
+            sql += " WHERE " + selection;
+        }
         try {
-            return DatabaseUtils.queryNumEntries(db, tableName, selection, selectionArgs);
+            return StatementCache.forDatabase(db).simpleQueryForLong(sql, selectionArgs);
         }
         catch (SQLiteException e) {
             e.printStackTrace();
@@ -197,6 +559,23 @@ public class SQLiteUtils {
         return safeQueryForLong(db, tableName, column, selection, selectionArgs, null, null, null);
     }
 
+    /**
+     * Convenience method to return a single {@link Long}.
+     *
+     * @param db The database to query.
+     * @param tableName The table name to compile the query against.
+     * @param column The column to return.
+     * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE itself). Passing null will
+     * return all rows for the given table.
+     * @param selectionArgs You may include ?s in selection, which will be replaced by the values from selectionArgs, in order that they appear in the
+     * selection. Each value is bound according to its type: {@code null} as NULL, {@code Long}, {@code Integer} and other integral
+     * numbers as INTEGER, {@code Boolean} as 0 or 1, {@code Double} and {@code Float} as REAL, {@code byte[]} as a BLOB and anything else as TEXT.
+     * @return The single {@link Long} result. Set to {@code null} if an error occurred.
+     */
+    public static Long safeQueryForLong(SQLiteDatabase db, String tableName, String column, String selection, Object[] selectionArgs) {
+        return safeQueryForLong(db, tableName, column, selection, selectionArgs, null, null, null);
+    }
+
     /**
      * Convenience method to return a single {@link Long}.
      *
@@ -225,19 +604,39 @@ public class SQLiteUtils {
             String having,
             String orderBy
     ) {
-        Cursor cursor = db.query(tableName, new String[] { column }, selection, selectionArgs, groupBy, having, orderBy, "1");
-        try {
-            return cursor.moveToFirst() ? cursor.getLong(0) : null;
-        }
-        catch (SQLiteException e) {
-            e.printStackTrace();
-            return null;
-        }
-        finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
+        return safeQueryForLong(db, tableName, column, selection, (Object[]) selectionArgs, groupBy, having, orderBy);
+    }
+
+    /**
+     * Convenience method to return a single {@link Long}.
+     *
+     * @param db The database to query.
+     * @param tableName The table name to compile the query against.
+     * @param column The column to return.
+     * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE itself). Passing null will
+     * return all rows for the given table.
+     * @param selectionArgs You may include ?s in selection, which will be replaced by the values from selectionArgs, in order that they appear in the
+     * selection. Each value is bound according to its type: {@code null} as NULL, {@code Long}, {@code Integer} and other integral
+     * numbers as INTEGER, {@code Boolean} as 0 or 1, {@code Double} and {@code Float} as REAL, {@code byte[]} as a BLOB and anything else as TEXT.
+     * @param groupBy A filter declaring how to group rows, formatted as an SQL GROUP BY clause (excluding the GROUP BY itself). Passing null will
+     * cause the rows to not be grouped.
+     * @param having A filter declare which row groups to include in the cursor, if row grouping is being used, formatted as an SQL HAVING clause
+     * (excluding the HAVING itself). Passing null will cause all row groups to be included, and is required when row grouping is not being used.
+     * @param orderBy How to order the rows, formatted as an SQL ORDER BY clause (excluding the ORDER BY itself). Passing null will use the default
+     * sort order, which may be unordered.
+     * @return The single {@link Long} result. Set to {@code null} if an error occurred.
+     */
+    public static Long safeQueryForLong(
+            SQLiteDatabase db,
+            String tableName,
+            String column,
+            String selection,
+            Object[] selectionArgs,
+            String groupBy,
+            String having,
+            String orderBy
+    ) {
+        return cachedQueryForLong(db, buildScalarQuery(tableName, column, selection, groupBy, having, orderBy), selectionArgs);
     }
 
     /**
@@ -273,13 +672,8 @@ public class SQLiteUtils {
      * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE itself). Passing null will
      * return all rows for the given table.
      * @param selectionArgs You may include ?s in selection, which will be replaced by the values from selectionArgs, in order that they appear in the
-     * selection. The values will be bound as Strings.
-     * @param groupBy A filter declaring how to group rows, formatted as an SQL GROUP BY clause (excluding the GROUP BY itself). Passing null will
-     * cause the rows to not be grouped.
-     * @param having A filter declare which row groups to include in the cursor, if row grouping is being used, formatted as an SQL HAVING clause
-     * (excluding the HAVING itself). Passing null will cause all row groups to be included, and is required when row grouping is not being used.
-     * @param orderBy How to order the rows, formatted as an SQL ORDER BY clause (excluding the ORDER BY itself). Passing null will use the default
-     * sort order, which may be unordered.
+     * selection. Each value is bound according to its type: {@code null} as NULL, {@code Long}, {@code Integer} and other integral
+     * numbers as INTEGER, {@code Boolean} as 0 or 1, {@code Double} and {@code Float} as REAL, {@code byte[]} as a BLOB and anything else as TEXT.
      * @param defaultValue The value to return if there query result is {@code null}.
      * @return The single {@link Long} result. Set to {@code null} if an error occurred.
      */
@@ -288,24 +682,100 @@ public class SQLiteUtils {
             String tableName,
             String column,
             String selection,
-            String[] selectionArgs,
+            Object[] selectionArgs,
+            long defaultValue
+    ) {
+        return queryForLong(db, tableName, column, selection, selectionArgs, null, null, null, defaultValue);
+    }
+
+    /**
+     * Convenience method to retrieve a single long value, or a default if the query returns no rows.
+     *
+     * @param db The database to query.
+     * @param tableName The table name to compile the query against.
+     * @param column The column to return.
+     * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE itself). Passing null will
+     * return all rows for the given table.
+     * @param selectionArgs You may include ?s in selection, which will be replaced by the values from selectionArgs, in order that they appear in the
+     * selection. The values will be bound as Strings.
+     * @param groupBy A filter declaring how to group rows, formatted as an SQL GROUP BY clause (excluding the GROUP BY itself). Passing null will
+     * cause the rows to not be grouped.
+     * @param having A filter declare which row groups to include in the cursor, if row grouping is being used, formatted as an SQL HAVING clause
+     * (excluding the HAVING itself). Passing null will cause all row groups to be included, and is required when row grouping is not being used.
+     * @param orderBy How to order the rows, formatted as an SQL ORDER BY clause (excluding the ORDER BY itself). Passing null will use the default
+     * sort order, which may be unordered.
+     * @param defaultValue The value to return if there query result is {@code null}.
+     * @return The single {@link Long} result. Set to {@code null} if an error occurred.
+     */
+    public static long queryForLong(
+            SQLiteDatabase db,
+            String tableName,
+            String column,
+            String selection,
+            String[] selectionArgs,
+            String groupBy,
+            String having,
+            String orderBy,
+            long defaultValue
+    ) {
+        return queryForLong(db, tableName, column, selection, (Object[]) selectionArgs, groupBy, having, orderBy, defaultValue);
+    }
+
+    /**
+     * Convenience method to retrieve a single long value, or a default if the query returns no rows.
+     *
+     * @param db The database to query.
+     * @param tableName The table name to compile the query against.
+     * @param column The column to return.
+     * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE itself). Passing null will
+     * return all rows for the given table.
+     * @param selectionArgs You may include ?s in selection, which will be replaced by the values from selectionArgs, in order that they appear in the
+     * selection. Each value is bound according to its type: {@code null} as NULL, {@code Long}, {@code Integer} and other integral
+     * numbers as INTEGER, {@code Boolean} as 0 or 1, {@code Double} and {@code Float} as REAL, {@code byte[]} as a BLOB and anything else as TEXT.
+     * @param groupBy A filter declaring how to group rows, formatted as an SQL GROUP BY clause (excluding the GROUP BY itself). Passing null will
+     * cause the rows to not be grouped.
+     * @param having A filter declare which row groups to include in the cursor, if row grouping is being used, formatted as an SQL HAVING clause
+     * (excluding the HAVING itself). Passing null will cause all row groups to be included, and is required when row grouping is not being used.
+     * @param orderBy How to order the rows, formatted as an SQL ORDER BY clause (excluding the ORDER BY itself). Passing null will use the default
+     * sort order, which may be unordered.
+     * @param defaultValue The value to return if there query result is {@code null}.
+     * @return The single {@link Long} result. Set to {@code null} if an error occurred.
+     */
+    public static long queryForLong(
+            SQLiteDatabase db,
+            String tableName,
+            String column,
+            String selection,
+            Object[] selectionArgs,
             String groupBy,
             String having,
             String orderBy,
             long defaultValue
     ) {
-        Cursor cursor = db.query(tableName, new String[] { column }, selection, selectionArgs, groupBy, having, orderBy, "1");
+        Long result = cachedQueryForLong(db, buildScalarQuery(tableName, column, selection, groupBy, having, orderBy), selectionArgs);
+        return result == null ? defaultValue : result;
+    }
+
+    /**
+     * Compile the statement used by the scalar query helpers, such as
+     * {@link #safeQueryForLong(SQLiteDatabase, String, String, String, Object[])} or
+     * {@link #safeQueryForString(SQLiteDatabase, String, String, String, Object[])}, for a query without grouping or ordering, so that the first
+     * such query does not pay for compilation.
+     *
+     * @param db The database the query will run against.
+     * @param tableName The table name to compile the query against.
+     * @param column The column to return.
+     * @param selection The filter, with the same ?s the query will use, or {@code null}.
+     * @return {@code true} if successful, {@code false} otherwise.
+     */
+    public static boolean precompileScalarQuery(SQLiteDatabase db, String tableName, String column, String selection) {
         try {
-            return cursor.moveToFirst() ? cursor.getLong(0) : defaultValue;
+            StatementCache.forDatabase(db).precompile(buildScalarQuery(tableName, column, selection, null, null, null));
+            return true;
         }
         catch (SQLiteException e) {
             e.printStackTrace();
-            return defaultValue;
-        }
-        finally {
-            if (cursor != null) {
-                cursor.close();
-            }
+            return false;
         }
     }
 
@@ -325,6 +795,23 @@ public class SQLiteUtils {
         return safeQueryForInt(db, tableName, column, selection, selectionArgs, null, null, null);
     }
 
+    /**
+     * Convenience method to return a single {@link Integer}.
+     *
+     * @param db The database to query.
+     * @param tableName The table name to compile the query against.
+     * @param column The column to return.
+     * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE itself). Passing null will
+     * return all rows for the given table.
+     * @param selectionArgs You may include ?s in selection, which will be replaced by the values from selectionArgs, in order that they appear in the
+     * selection. Each value is bound according to its type: {@code null} as NULL, {@code Long}, {@code Integer} and other integral
+     * numbers as INTEGER, {@code Boolean} as 0 or 1, {@code Double} and {@code Float} as REAL, {@code byte[]} as a BLOB and anything else as TEXT.
+     * @return The single {@link Integer} result. Set to {@code null} if an error occurred.
+     */
+    public static Integer safeQueryForInt(SQLiteDatabase db, String tableName, String column, String selection, Object[] selectionArgs) {
+        return safeQueryForInt(db, tableName, column, selection, selectionArgs, null, null, null);
+    }
+
     /**
      * Convenience method to return a single {@link Integer}.
      *
@@ -353,19 +840,40 @@ public class SQLiteUtils {
             String having,
             String orderBy
     ) {
-        Cursor cursor = db.query(tableName, new String[] { column }, selection, selectionArgs, groupBy, having, orderBy, "1");
-        try {
-            return cursor.moveToFirst() ? cursor.getInt(0) : null;
-        }
-        catch (SQLiteException e) {
-            e.printStackTrace();
-            return null;
-        }
-        finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
+        return safeQueryForInt(db, tableName, column, selection, (Object[]) selectionArgs, groupBy, having, orderBy);
+    }
+
+    /**
+     * Convenience method to return a single {@link Integer}.
+     *
+     * @param db The database to query.
+     * @param tableName The table name to compile the query against.
+     * @param column The column to return.
+     * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE itself). Passing null will
+     * return all rows for the given table.
+     * @param selectionArgs You may include ?s in selection, which will be replaced by the values from selectionArgs, in order that they appear in the
+     * selection. Each value is bound according to its type: {@code null} as NULL, {@code Long}, {@code Integer} and other integral
+     * numbers as INTEGER, {@code Boolean} as 0 or 1, {@code Double} and {@code Float} as REAL, {@code byte[]} as a BLOB and anything else as TEXT.
+     * @param groupBy A filter declaring how to group rows, formatted as an SQL GROUP BY clause (excluding the GROUP BY itself). Passing null will
+     * cause the rows to not be grouped.
+     * @param having A filter declare which row groups to include in the cursor, if row grouping is being used, formatted as an SQL HAVING clause
+     * (excluding the HAVING itself). Passing null will cause all row groups to be included, and is required when row grouping is not being used.
+     * @param orderBy How to order the rows, formatted as an SQL ORDER BY clause (excluding the ORDER BY itself). Passing null will use the default
+     * sort order, which may be unordered.
+     * @return The single {@link Long} result. Set to {@code null} if an error occurred.
+     */
+    public static Integer safeQueryForInt(
+            SQLiteDatabase db,
+            String tableName,
+            String column,
+            String selection,
+            Object[] selectionArgs,
+            String groupBy,
+            String having,
+            String orderBy
+    ) {
+        Long result = cachedQueryForLong(db, buildScalarQuery(tableName, column, selection, groupBy, having, orderBy), selectionArgs);
+        return result == null ? null : result.intValue();
     }
 
     /**
@@ -392,6 +900,31 @@ public class SQLiteUtils {
         return queryForInt(db, tableName, column, selection, selectionArgs, null, null, null, defaultValue);
     }
 
+    /**
+     * Convenience method to return a single {@code int}, or a default value if no result is found.
+     *
+     * @param db The database to query.
+     * @param tableName The table name to compile the query against.
+     * @param column The column to return.
+     * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE itself). Passing null will
+     * return all rows for the given table.
+     * @param selectionArgs You may include ?s in selection, which will be replaced by the values from selectionArgs, in order that they appear in the
+     * selection. Each value is bound according to its type: {@code null} as NULL, {@code Long}, {@code Integer} and other integral
+     * numbers as INTEGER, {@code Boolean} as 0 or 1, {@code Double} and {@code Float} as REAL, {@code byte[]} as a BLOB and anything else as TEXT.
+     * @param defaultValue The value to return if the query result is {@code null}.
+     * @return The single {@link Integer} result. Set to {@code null} if an error occurred.
+     */
+    public static int queryForInt(
+            SQLiteDatabase db,
+            String tableName,
+            String column,
+            String selection,
+            Object[] selectionArgs,
+            int defaultValue
+    ) {
+        return queryForInt(db, tableName, column, selection, selectionArgs, null, null, null, defaultValue);
+    }
+
     /**
      * Convenience method to return a single {@code int}, or a default value if no result is found.
      *
@@ -422,19 +955,42 @@ public class SQLiteUtils {
             String orderBy,
             int defaultValue
     ) {
-        Cursor cursor = db.query(tableName, new String[] { column }, selection, selectionArgs, groupBy, having, orderBy, "1");
-        try {
-            return cursor.moveToFirst() ? cursor.getInt(0) : defaultValue;
-        }
-        catch (SQLiteException e) {
-            e.printStackTrace();
-            return defaultValue;
-        }
-        finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
+        return queryForInt(db, tableName, column, selection, (Object[]) selectionArgs, groupBy, having, orderBy, defaultValue);
+    }
+
+    /**
+     * Convenience method to return a single {@code int}, or a default value if no result is found.
+     *
+     * @param db The database to query.
+     * @param tableName The table name to compile the query against.
+     * @param column The column to return.
+     * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE itself). Passing null will
+     * return all rows for the given table.
+     * @param selectionArgs You may include ?s in selection, which will be replaced by the values from selectionArgs, in order that they appear in the
+     * selection. Each value is bound according to its type: {@code null} as NULL, {@code Long}, {@code Integer} and other integral
+     * numbers as INTEGER, {@code Boolean} as 0 or 1, {@code Double} and {@code Float} as REAL, {@code byte[]} as a BLOB and anything else as TEXT.
+     * @param groupBy A filter declaring how to group rows, formatted as an SQL GROUP BY clause (excluding the GROUP BY itself). Passing null will
+     * cause the rows to not be grouped.
+     * @param having A filter declare which row groups to include in the cursor, if row grouping is being used, formatted as an SQL HAVING clause
+     * (excluding the HAVING itself). Passing null will cause all row groups to be included, and is required when row grouping is not being used.
+     * @param orderBy How to order the rows, formatted as an SQL ORDER BY clause (excluding the ORDER BY itself). Passing null will use the default
+     * sort order, which may be unordered.
+     * @param defaultValue The value to return if the query result is {@code null}.
+     * @return The single {@link Integer} result. Set to {@code null} if an error occurred.
+     */
+    public static int queryForInt(
+            SQLiteDatabase db,
+            String tableName,
+            String column,
+            String selection,
+            Object[] selectionArgs,
+            String groupBy,
+            String having,
+            String orderBy,
+            int defaultValue
+    ) {
+        Long result = cachedQueryForLong(db, buildScalarQuery(tableName, column, selection, groupBy, having, orderBy), selectionArgs);
+        return result == null ? defaultValue : result.intValue();
     }
 
     /**
@@ -453,6 +1009,23 @@ public class SQLiteUtils {
         return safeQueryForString(db, tableName, column, selection, selectionArgs, null, null, null);
     }
 
+    /**
+     * Returns a single {@code String} from a query.
+     *
+     * @param db The database to query.
+     * @param tableName The table name to compile the query against.
+     * @param column The column to return.
+     * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE itself). Passing null will
+     * return all rows for the given table.
+     * @param selectionArgs You may include ?s in selection, which will be replaced by the values from selectionArgs, in order that they appear in the
+     * selection. Each value is bound according to its type: {@code null} as NULL, {@code Long}, {@code Integer} and other integral
+     * numbers as INTEGER, {@code Boolean} as 0 or 1, {@code Double} and {@code Float} as REAL, {@code byte[]} as a BLOB and anything else as TEXT.
+     * @return The String representation of the result. Set to {@code null} if an error occurred.
+     */
+    public static String safeQueryForString(SQLiteDatabase db, String tableName, String column, String selection, Object[] selectionArgs) {
+        return safeQueryForString(db, tableName, column, selection, selectionArgs, null, null, null);
+    }
+
     /**
      * Returns a single {@code String}.
      *
@@ -481,19 +1054,52 @@ public class SQLiteUtils {
             String having,
             String orderBy
     ) {
-        Cursor cursor = db.query(tableName, new String[] { column }, selection, selectionArgs, groupBy, having, orderBy, "1");
-        try {
-            return cursor.moveToFirst() ? cursor.getString(0) : null;
-        }
-        catch (SQLiteException e) {
-            e.printStackTrace();
-            return null;
-        }
-        finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
+        return safeQueryForString(db, tableName, column, selection, (Object[]) selectionArgs, groupBy, having, orderBy);
+    }
+
+    /**
+     * Returns a single {@code String}.
+     *
+     * @param db The database to query.
+     * @param tableName The table name to compile the query against.
+     * @param column The column to return.
+     * @param selection A filter declaring which rows to return, formatted as an SQL WHERE clause (excluding the WHERE itself). Passing null will
+     * return all rows for the given table.
+     * @param selectionArgs You may include ?s in selection, which will be replaced by the values from selectionArgs, in order that they appear in the
+     * selection. Each value is bound according to its type: {@code null} as NULL, {@code Long}, {@code Integer} and other integral
+     * numbers as INTEGER, {@code Boolean} as 0 or 1, {@code Double} and {@code Float} as REAL, {@code byte[]} as a BLOB and anything else as TEXT.
+     * @param groupBy A filter declaring how to group rows, formatted as an SQL GROUP BY clause (excluding the GROUP BY itself). Passing null will
+     * cause the rows to not be grouped.
+     * @param having A filter declare which row groups to include in the cursor, if row grouping is being used, formatted as an SQL HAVING clause
+     * (excluding the HAVING itself). Passing null will cause all row groups to be included, and is required when row grouping is not being used.
+     * @param orderBy How to order the rows, formatted as an SQL ORDER BY clause (excluding the ORDER BY itself). Passing null will use the default
+     * sort order, which may be unordered.
+     * @return The String representation of the result. Set to {@code null} if an error occurred.
+     */
+    public static String safeQueryForString(
+            SQLiteDatabase db,
+            String tableName,
+            String column,
+            String selection,
+            Object[] selectionArgs,
+            String groupBy,
+            String having,
+            String orderBy
+    ) {
+        return cachedQueryForString(db, buildScalarQuery(tableName, column, selection, groupBy, having, orderBy), selectionArgs);
+    }
+
+    /**
+     * Run the provided SQL and return a {@link Cursor} over the result set, binding each argument according to its type.
+     *
+     * @param db The database to query.
+     * @param sql The SQL query. The SQL string must not be ; terminated.
+     * @param selectionArgs You may include ?s in the query, which will be replaced by the values from selectionArgs, in order that they appear in
+     * the query. Each value is bound according to its type, as for {@link #safeQueryForLong(SQLiteDatabase, String, String, String, Object[])}.
+     * @return A {@link Cursor} object, which is positioned before the first entry.
+     */
+    public static Cursor rawQuery(SQLiteDatabase db, String sql, Object[] selectionArgs) {
+        return db.rawQueryWithFactory(new BindArgsCursorFactory(selectionArgs), sql, null, null);
     }
 
     /**
@@ -547,118 +1153,1192 @@ public class SQLiteUtils {
      * @return {@code true} if successful, {@code false} otherwise.
      */
     public static boolean exportTable(Context context, String tableName, String absolutePath) {
-        // Make sure the database file exists
-        try {
-            SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(absolutePath, null);
-            db.close();
-        }
-        catch (SQLiteException e) {
+        return exportTable(context, OpenHelper.DATABASE_NAME, tableName, absolutePath);
+    }
+
+    /**
+     * Export a table to the specified database. If the database does not exist, it will be created.
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param databaseName The name of the database, as registered with {@link OpenHelper#register(String, int)}.
+     * @param tableName The table to export.
+     * @param absolutePath The database file path.
+     * @return {@code true} if successful, {@code false} otherwise.
+     */
+    public static boolean exportTable(Context context, String databaseName, String tableName, String absolutePath) {
+        return exportTables(context, databaseName, Collections.singletonList(tableName), absolutePath) != null;
+    }
+
+    /**
+     * Export several tables, and their indexes, to the specified database. If the database does not exist, it will be created. <p> The database is
+     * attached once and every table is created and copied in a single transaction. Indexes are created after all data has been loaded, so each is
+     * built in one sorted pass instead of being maintained row by row. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param tableNames The tables to export.
+     * @param absolutePath The database file path.
+     * @return The row count, load time and index build time of each table, in export order, or {@code null} if an error occurred.
+     */
+    public static Map<String, TableTimings> exportTables(Context context, Collection<String> tableNames, String absolutePath) {
+        return exportTables(context, OpenHelper.DATABASE_NAME, tableNames, absolutePath);
+    }
+
+    /**
+     * Export several tables, and their indexes, to the specified database. If the database does not exist, it will be created. <p> The database is
+     * attached once and every table is created and copied in a single transaction. Indexes are created after all data has been loaded, so each is
+     * built in one sorted pass instead of being maintained row by row. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param databaseName The name of the database, as registered with {@link OpenHelper#register(String, int)}.
+     * @param tableNames The tables to export.
+     * @param absolutePath The database file path.
+     * @return The row count, load time and index build time of each table, in export order, or {@code null} if an error occurred.
+     */
+    public static Map<String, TableTimings> exportTables(Context context, String databaseName, Collection<String> tableNames, String absolutePath) {
+        // Make sure the database file exists
+        try {
+            SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(absolutePath, null);
+            db.close();
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        SQLiteDatabase db = OpenHelper.getDatabase(context, databaseName);
+        detachDatabase(db, "Export");
+        if (!attachDatabase(db, absolutePath, "Export")) {
+            return null;
+        }
+
+        LinkedHashMap<String, TableTimings> result = new LinkedHashMap<String, TableTimings>();
+        try {
+            // Begin a new transaction
+            db.beginTransaction();
+            try {
+                // Create and fill every table
+                for (String tableName : tableNames) {
+                    long start = System.nanoTime();
+                    TableTimings timings = new TableTimings(tableName);
+                    result.put(tableName, timings);
+
+                    // Drop any existing table with the export table name, then create the new table
+                    String exportTableName = "Export." + tableName;
+                    db.execSQL("DROP TABLE IF EXISTS " + exportTableName);
+                    String sql = safeQueryForString(db, "sqlite_master", "sql", "type='table' AND name=?", new String[] { tableName });
+                    if (sql == null) {
+                        return null;
+                    }
+                    db.execSQL(qualifyCreateSql(sql, "Export"));
+
+                    // Copy all data from the internal database to the external database
+                    long count = copyRecords(db, exportTableName, tableName, null, null, SQLiteDatabase.CONFLICT_REPLACE);
+                    if (count == -1) {
+                        return null;
+                    }
+                    timings.setRowCount(count);
+                    timings.addLoadNanos(System.nanoTime() - start);
+                }
+
+                // Build the indexes now that the data is in place
+                for (TableTimings timings : result.values()) {
+                    long start = System.nanoTime();
+                    for (String sql : listIndexSql(db, null, timings.getTableName())) {
+                        db.execSQL(qualifyCreateSql(sql, "Export"));
+                    }
+                    timings.addIndexNanos(System.nanoTime() - start);
+                }
+
+                // Commit changes
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+        finally {
+            // Detach the external database
+            detachDatabase(db, "Export");
+        }
+
+        return result;
+    }
+
+    /**
+     * Export several tables, and their indexes, to the specified database, copying the tables in parallel. If the database does not exist, it will be
+     * created. <p> Each table is copied by a worker thread on its own connection into its own temporary file next to {@code absolutePath}, so the
+     * copies neither share a connection nor contend for a write lock. The temporary files are then merged into the target one table at a time, and
+     * indexes are built during the merge. Tables that exist in the target and are not exported are left alone. Compare the wall-clock time with
+     * {@link #exportTables(Context, Collection, String)} to decide which path suits a device. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param tableNames The tables to export.
+     * @param absolutePath The database file path.
+     * @param threads The maximum number of tables copied at once.
+     * @return The row count, load time (copy plus merge) and index build time of each table, in export order, or {@code null} if an error occurred.
+     */
+    public static Map<String, TableTimings> exportTablesParallel(
+            Context context,
+            Collection<String> tableNames,
+            String absolutePath,
+            int threads
+    ) {
+        return exportTablesParallel(context, OpenHelper.DATABASE_NAME, tableNames, absolutePath, threads);
+    }
+
+    /**
+     * Export several tables, and their indexes, to the specified database, copying the tables in parallel. If the database does not exist, it will be
+     * created. <p> Each table is copied by a worker thread on its own connection into its own temporary file next to {@code absolutePath}, so the
+     * copies neither share a connection nor contend for a write lock. The temporary files are then merged into the target one table at a time, and
+     * indexes are built during the merge. Tables that exist in the target and are not exported are left alone. Compare the wall-clock time with
+     * {@link #exportTables(Context, Collection, String)} to decide which path suits a device. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param databaseName The name of the database, as registered with {@link OpenHelper#register(String, int)}.
+     * @param tableNames The tables to export.
+     * @param absolutePath The database file path.
+     * @param threads The maximum number of tables copied at once.
+     * @return The row count, load time (copy plus merge) and index build time of each table, in export order, or {@code null} if an error occurred.
+     */
+    public static Map<String, TableTimings> exportTablesParallel(
+            Context context,
+            String databaseName,
+            Collection<String> tableNames,
+            String absolutePath,
+            int threads
+    ) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        SQLiteDatabase source = OpenHelper.getDatabase(context, databaseName);
+        final String sourcePath = source.getPath();
+
+        // Copy every table into its own part file
+        LinkedHashMap<String, Future<TableTimings>> futures = new LinkedHashMap<String, Future<TableTimings>>();
+        LinkedHashMap<String, String> partPaths = new LinkedHashMap<String, String>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tableNames.size())));
+        LinkedHashMap<String, List<String>> indexSql = new LinkedHashMap<String, List<String>>();
+        LinkedHashMap<String, TableTimings> result = new LinkedHashMap<String, TableTimings>();
+        try {
+            for (final String tableName : tableNames) {
+                indexSql.put(tableName, listIndexSql(source, null, tableName));
+                final String partPath = absolutePath + ".part" + partPaths.size();
+                partPaths.put(tableName, partPath);
+                futures.put(tableName, executor.submit(new Callable<TableTimings>() {
+                    @Override
+                    public TableTimings call() {
+                        return exportTablePart(sourcePath, tableName, partPath);
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<TableTimings>> entry : futures.entrySet()) {
+                TableTimings timings = entry.getValue().get();
+                if (timings == null) {
+                    return null;
+                }
+                result.put(entry.getKey(), timings);
+            }
+
+            // Merge the part files into the target
+            SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(absolutePath, null);
+            try {
+                for (TableTimings timings : result.values()) {
+                    String tableName = timings.getTableName();
+                    if (!mergeTablePart(db, timings, partPaths.get(tableName), indexSql.get(tableName))) {
+                        return null;
+                    }
+                }
+            }
+            finally {
+                StatementCache.remove(db);
+                db.close();
+            }
+            return result;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException e) {
             e.printStackTrace();
+            return null;
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+        finally {
+            // A copy in progress cannot be interrupted, so wait for the workers to close their part files before deleting them
+            executor.shutdownNow();
+            awaitTermination(executor);
+            for (String partPath : partPaths.values()) {
+                deleteDatabaseFiles(partPath);
+            }
+        }
+    }
+
+    /**
+     * Wait for an executor that has been shut down to finish its running tasks. An interrupt does not end the wait, but is restored afterwards.
+     *
+     * @param executor The executor.
+     */
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Export several tables, and their indexes, to a new database file as one consistent point-in-time snapshot, replacing the file if it exists.
+     * <p> The export runs on a private connection to a scratch file next to {@code absolutePath}, with the application database attached, inside a
+     * single deferred transaction. All tables are therefore read from the same snapshot of the application database, while the shared connection
+     * stays free. When write-ahead logging is enabled (see {@link OpenHelper#enableWriteAheadLogging(Context, int)}), writers keep committing while
+     * the export runs. Without it, the read lock held for the duration of the export delays their commits. Once complete, the scratch file is
+     * renamed over {@code absolutePath}, which then holds exactly the exported tables. If an error occurs, the scratch file is deleted and
+     * {@code absolutePath} is left as it was. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param tableNames The tables to export.
+     * @param absolutePath The database file path.
+     * @return The row count, load time and index build time of each table, in export order, or {@code null} if an error occurred.
+     */
+    public static Map<String, TableTimings> exportTablesSnapshot(Context context, Collection<String> tableNames, String absolutePath) {
+        return exportTablesSnapshot(context, OpenHelper.DATABASE_NAME, tableNames, absolutePath);
+    }
+
+    /**
+     * Export several tables, and their indexes, to a new database file as one consistent point-in-time snapshot, replacing the file if it exists.
+     * <p> The export runs on a private connection to a scratch file next to {@code absolutePath}, with the application database attached, inside a
+     * single deferred transaction. All tables are therefore read from the same snapshot of the application database, while the shared connection
+     * stays free. When write-ahead logging is enabled (see {@link OpenHelper#enableWriteAheadLogging(Context, int)}), writers keep committing while
+     * the export runs. Without it, the read lock held for the duration of the export delays their commits. Once complete, the scratch file is
+     * renamed over {@code absolutePath}, which then holds exactly the exported tables. If an error occurs, the scratch file is deleted and
+     * {@code absolutePath} is left as it was. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param databaseName The name of the database, as registered with {@link OpenHelper#register(String, int)}.
+     * @param tableNames The tables to export.
+     * @param absolutePath The database file path.
+     * @return The row count, load time and index build time of each table, in export order, or {@code null} if an error occurred.
+     */
+    public static Map<String, TableTimings> exportTablesSnapshot(
+            Context context,
+            String databaseName,
+            Collection<String> tableNames,
+            String absolutePath
+    ) {
+        String sourcePath = OpenHelper.getDatabase(context, databaseName).getPath();
+        String scratchPath = absolutePath + ".snapshot";
+        deleteDatabaseFiles(scratchPath);
+        SQLiteDatabase db;
+        try {
+            db = SQLiteDatabase.openOrCreateDatabase(scratchPath, null);
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+        Map<String, TableTimings> result = null;
+        try {
+            result = copySnapshot(db, sourcePath, tableNames);
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+        }
+        finally {
+            // Closing the connection rolls back the snapshot transaction if the copy stopped part way
+            StatementCache.remove(db);
+            db.close();
+            if (result == null) {
+                deleteDatabaseFiles(scratchPath);
+            }
+        }
+        if (result == null) {
+            return null;
+        }
+
+        // A journal left behind by the old file would otherwise be applied to the new one when it is next opened
+        String[] suffixes = { "-journal", "-wal", "-shm" };
+        for (String suffix : suffixes) {
+            new File(absolutePath + suffix).delete();
+        }
+        if (!new File(scratchPath).renameTo(new File(absolutePath))) {
+            deleteDatabaseFiles(scratchPath);
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Copy tables and their indexes from the application database into an empty database, reading every table from the same snapshot. Used by
+     * {@link #exportTablesSnapshot(Context, String, Collection, String)}.
+     *
+     * @param db A private connection to the empty database.
+     * @param sourcePath The path of the application database.
+     * @param tableNames The tables to copy.
+     * @return The row count, load time and index build time of each table, in copy order, or {@code null} if an error occurred, in which case the
+     * snapshot transaction is left open for the caller to discard with the connection.
+     * @throws SQLiteException If a statement failed, leaving the snapshot transaction open in the same way.
+     */
+    private static Map<String, TableTimings> copySnapshot(SQLiteDatabase db, String sourcePath, Collection<String> tableNames) {
+        if (!attachDatabase(db, sourcePath, "Source")) {
+            return null;
+        }
+
+        // SQLiteDatabase.beginTransaction() would write-lock every attached database, the source included. A savepoint opens a deferred
+        // transaction instead, which only reads the source and pins its snapshot at the first read. It is never rolled back with a statement,
+        // since Android before API 28 takes any ROLLBACK for the end of a transaction of its own.
+        db.execSQL("SAVEPOINT snapshot");
+        LinkedHashMap<String, TableTimings> result = new LinkedHashMap<String, TableTimings>();
+        LinkedHashMap<String, List<String>> indexSql = new LinkedHashMap<String, List<String>>();
+        for (String tableName : tableNames) {
+            long start = System.nanoTime();
+            TableTimings timings = new TableTimings(tableName);
+            result.put(tableName, timings);
+            indexSql.put(tableName, listIndexSql(db, "Source", tableName));
+
+            String sql = safeQueryForString(db, "Source.sqlite_master", "sql", "type='table' AND name=?", new String[] { tableName });
+            if (sql == null) {
+                return null;
+            }
+            db.execSQL(sql);
+            SchemaCache.invalidate(db, tableName);
+            long count = copyRecords(db, tableName, "Source." + tableName, null, null, SQLiteDatabase.CONFLICT_REPLACE);
+            if (count == -1) {
+                return null;
+            }
+            timings.setRowCount(count);
+            timings.addLoadNanos(System.nanoTime() - start);
+        }
+
+        // Build the indexes now that the data is in place
+        for (TableTimings timings : result.values()) {
+            long start = System.nanoTime();
+            for (String sql : indexSql.get(timings.getTableName())) {
+                db.execSQL(sql);
+            }
+            timings.addIndexNanos(System.nanoTime() - start);
+        }
+
+        // Commit, which also ends the read of the source
+        db.execSQL("RELEASE snapshot");
+        return result;
+    }
+
+    /**
+     * Copy one table into a new database file on a private connection. Runs on a worker thread of
+     * {@link #exportTablesParallel(Context, Collection, String, int)}.
+     *
+     * @param sourcePath The path of the database containing the table.
+     * @param tableName The table to copy.
+     * @param partPath The path of the file to create.
+     * @return The row count and copy time, or {@code null} if an error occurred.
+     */
+    private static TableTimings exportTablePart(String sourcePath, String tableName, String partPath) {
+        long start = System.nanoTime();
+        TableTimings timings = new TableTimings(tableName);
+        deleteDatabaseFiles(partPath);
+        SQLiteDatabase db;
+        try {
+            db = SQLiteDatabase.openOrCreateDatabase(partPath, null);
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+        try {
+            // The part file is scratch space, so it need not survive a crash
+            db.execSQL("PRAGMA synchronous=OFF");
+            if (!attachDatabase(db, sourcePath, "Source")) {
+                return null;
+            }
+
+            // Each statement runs in its own implicit transaction, which only ever reads the source
+            String sql = safeQueryForString(db, "Source.sqlite_master", "sql", "type='table' AND name=?", new String[] { tableName });
+            if (sql == null) {
+                return null;
+            }
+            db.execSQL(sql);
+            long count = copyRecords(db, tableName, "Source." + tableName, null, null, SQLiteDatabase.CONFLICT_REPLACE);
+            if (count == -1) {
+                return null;
+            }
+            timings.setRowCount(count);
+            timings.addLoadNanos(System.nanoTime() - start);
+            return timings;
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+        finally {
+            StatementCache.remove(db);
+            db.close();
+        }
+    }
+
+    /**
+     * Move one table from a part file into the target database and build its indexes.
+     *
+     * @param db The target database.
+     * @param timings The table's timings, updated with the merge and index build times.
+     * @param partPath The path of the part file.
+     * @param indexSql The {@code CREATE INDEX} statements of the table.
+     * @return {@code true} if successful, {@code false} otherwise.
+     */
+    private static boolean mergeTablePart(SQLiteDatabase db, TableTimings timings, String partPath, List<String> indexSql) {
+        String tableName = timings.getTableName();
+        detachDatabase(db, "Part");
+        if (!attachDatabase(db, partPath, "Part")) {
             return false;
         }
+        try {
+            long start = System.nanoTime();
+            db.beginTransaction();
+            try {
+                // Unqualified, a table missing from the target would resolve to the one in the part file
+                db.execSQL("DROP TABLE IF EXISTS main." + quoteIdentifier(tableName));
+                String sql = safeQueryForString(db, "Part.sqlite_master", "sql", "type='table' AND name=?", new String[] { tableName });
+                if (sql == null) {
+                    return false;
+                }
+                db.execSQL(sql);
+                SchemaCache.invalidate(db, tableName);
+                if (copyRecords(db, tableName, "Part." + tableName, null, null, SQLiteDatabase.CONFLICT_REPLACE) == -1) {
+                    return false;
+                }
+                long loaded = System.nanoTime();
+                timings.addLoadNanos(loaded - start);
 
-        SQLiteDatabase db = OpenHelper.getDatabase(context);
-        safeExecSql(db, "DETACH DATABASE Export");
-        if (!safeExecSql(db, "ATTACH DATABASE '" + absolutePath + "' AS Export")) {
+                // Build the indexes now that the data is in place
+                for (String createIndex : indexSql) {
+                    db.execSQL(createIndex);
+                }
+                timings.addIndexNanos(System.nanoTime() - loaded);
+                db.setTransactionSuccessful();
+                return true;
+            }
+            finally {
+                db.endTransaction();
+            }
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
             return false;
         }
+        finally {
+            detachDatabase(db, "Part");
+        }
+    }
 
-        // Begin a new transaction
-        db.beginTransaction();
+    /**
+     * Export only the rows of tracked tables that changed after a token to a new database file. <p> The tables must be tracked with {@link
+     * ChangeTracker#enable(SQLiteDatabase, String)}. For each table, the rows whose keys were logged after {@code sinceToken} and still exist are
+     * copied with a single {@code INSERT ... SELECT}, and the keys of rows that were deleted are written to {@link ChangeTracker#TOMBSTONE_TABLE}.
+     * {@link ChangeTracker#DELTA_TABLE} lists each exported table with its key column and the token range covered. The export runs in one
+     * transaction, so the returned token matches the exported rows exactly. Any existing file at {@code absolutePath} is replaced. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param tableNames The tracked tables to export.
+     * @param absolutePath The database file path.
+     * @param sinceToken The token returned by the previous export, or 0 to export every logged change.
+     * @return The token to pass to the next export, or -1 if an error occurred or a table is not tracked.
+     */
+    public static long exportChangesSince(Context context, Collection<String> tableNames, String absolutePath, long sinceToken) {
+        return exportChangesSince(context, OpenHelper.DATABASE_NAME, tableNames, absolutePath, sinceToken);
+    }
+
+    /**
+     * Export only the rows of tracked tables that changed after a token to a new database file. <p> The tables must be tracked with {@link
+     * ChangeTracker#enable(SQLiteDatabase, String)}. For each table, the rows whose keys were logged after {@code sinceToken} and still exist are
+     * copied with a single {@code INSERT ... SELECT}, and the keys of rows that were deleted are written to {@link ChangeTracker#TOMBSTONE_TABLE}.
+     * {@link ChangeTracker#DELTA_TABLE} lists each exported table with its key column and the token range covered. The export runs in one
+     * transaction, so the returned token matches the exported rows exactly. Any existing file at {@code absolutePath} is replaced. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param databaseName The name of the database, as registered with {@link OpenHelper#register(String, int)}.
+     * @param tableNames The tracked tables to export.
+     * @param absolutePath The database file path.
+     * @param sinceToken The token returned by the previous export, or 0 to export every logged change.
+     * @return The token to pass to the next export, or -1 if an error occurred or a table is not tracked.
+     */
+    public static long exportChangesSince(Context context, String databaseName, Collection<String> tableNames, String absolutePath, long sinceToken) {
+        // Start from an empty database file
+        deleteDatabaseFiles(absolutePath);
+        try {
+            SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(absolutePath, null);
+            db.close();
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return -1;
+        }
 
-        // Drop any existing table with the export table name
-        String exportTableName = "Export." + tableName;
-        db.execSQL("DROP TABLE IF EXISTS " + exportTableName);
+        SQLiteDatabase db = OpenHelper.getDatabase(context, databaseName);
+        detachDatabase(db, "Export");
+        if (!attachDatabase(db, absolutePath, "Export")) {
+            return -1;
+        }
 
-        // Create the new table
         try {
-            String sql = DatabaseUtils.stringForQuery(db, "SELECT sql FROM sqlite_master WHERE type='table' AND name='" + tableName + "'", null);
-            sql = sql.replaceFirst(tableName, exportTableName);
-            db.execSQL(sql);
-            Cursor cursor = db.query("sqlite_master", new String[] { "name" }, "type='table'", null, null, null, null, "1");
-            DatabaseUtils.dumpCursor(cursor);
-            cursor.close();
+            // Begin a new transaction, which also keeps writers from logging changes while the token is read
+            db.beginTransaction();
+            try {
+                long token = ChangeTracker.getCurrentToken(db);
+                db.execSQL("CREATE TABLE Export." + ChangeTracker.TOMBSTONE_TABLE + " (tbl TEXT NOT NULL, row_key)");
+                db.execSQL("CREATE TABLE Export." + ChangeTracker.DELTA_TABLE
+                        + " (tbl TEXT PRIMARY KEY, key_column TEXT NOT NULL, since_token INTEGER NOT NULL, token INTEGER NOT NULL)");
+
+                for (String tableName : tableNames) {
+                    String keyColumn = ChangeTracker.getKeyColumn(db, tableName);
+                    if (keyColumn == null || !ChangeTracker.isEnabled(db, tableName)) {
+                        return -1;
+                    }
+                    String key = quoteIdentifier(keyColumn);
+                    String changedKeys = "SELECT row_key FROM main." + ChangeTracker.LOG_TABLE + " WHERE tbl=? AND seq>? AND seq<=?";
+
+                    // Create the table, then copy the rows that changed and still exist
+                    String sql = safeQueryForString(db, "sqlite_master", "sql", "type='table' AND name=?", new String[] { tableName });
+                    if (sql == null) {
+                        return -1;
+                    }
+                    db.execSQL(qualifyCreateSql(sql, "Export"));
+                    long count = copyRecords(db, "Export." + tableName, tableName, key + " IN (" + changedKeys + ")",
+                            new Object[] { tableName, sinceToken, token }, SQLiteDatabase.CONFLICT_REPLACE);
+                    if (count == -1) {
+                        return -1;
+                    }
+
+                    // Record the keys of rows that changed and no longer exist
+                    db.execSQL("INSERT INTO Export." + ChangeTracker.TOMBSTONE_TABLE + " (tbl, row_key) SELECT DISTINCT ?, row_key FROM ("
+                            + changedKeys + ") AS changed WHERE NOT EXISTS (SELECT 1 FROM main." + quoteIdentifier(tableName) + " WHERE " + key
+                            + "=changed.row_key)", new Object[] { tableName, tableName, sinceToken, token });
+                    db.execSQL("INSERT INTO Export." + ChangeTracker.DELTA_TABLE + " (tbl, key_column, since_token, token) VALUES (?, ?, ?, ?)",
+                            new Object[] { tableName, keyColumn, sinceToken, token });
+                }
+
+                // Commit changes
+                db.setTransactionSuccessful();
+                return token;
+            }
+            finally {
+                db.endTransaction();
+            }
         }
         catch (SQLiteException e) {
             e.printStackTrace();
+            return -1;
+        }
+        finally {
+            // Detach the external database
+            detachDatabase(db, "Export");
+        }
+    }
+
+    /**
+     * Back up the whole database to a file. <p> With SQLite 3.27 or later this runs {@code VACUUM INTO}, which writes a compacted copy page by page.
+     * On older versions the write-ahead log, if any, is checkpointed, writers are locked out with an exclusive transaction, and the database file
+     * (plus any remaining log, saved next to the copy with a {@code -wal} suffix) is copied with {@link FileChannel#transferTo(long, long,
+     * java.nio.channels.WritableByteChannel)}. Either way no row is rewritten through SQL. Must not be called inside a transaction. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param absolutePath The backup file path. Any existing file is replaced.
+     * @return {@code true} if successful, {@code false} otherwise.
+     */
+    public static boolean backupDatabase(Context context, String absolutePath) {
+        return backupDatabase(context, OpenHelper.DATABASE_NAME, absolutePath);
+    }
+
+    /**
+     * Back up the whole database to a file. <p> With SQLite 3.27 or later this runs {@code VACUUM INTO}, which writes a compacted copy page by page.
+     * On older versions the write-ahead log, if any, is checkpointed, writers are locked out with an exclusive transaction, and the database file
+     * (plus any remaining log, saved next to the copy with a {@code -wal} suffix) is copied with {@link FileChannel#transferTo(long, long,
+     * java.nio.channels.WritableByteChannel)}. Either way no row is rewritten through SQL. Must not be called inside a transaction. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param databaseName The name of the database, as registered with {@link OpenHelper#register(String, int)}.
+     * @param absolutePath The backup file path. Any existing file is replaced.
+     * @return {@code true} if successful, {@code false} otherwise.
+     */
+    public static boolean backupDatabase(Context context, String databaseName, String absolutePath) {
+        SQLiteDatabase db = OpenHelper.getDatabase(context, databaseName);
+        deleteDatabaseFiles(absolutePath);
+        if (isSQLiteVersionAtLeast(db, 3, 27, 0)) {
+            return safeExecSql(db, "VACUUM INTO ?", new Object[] { absolutePath });
+        }
+
+        // Move committed pages from the log into the database file first, so that there is little or no log left to copy
+        File wal = new File(db.getPath() + "-wal");
+        if (wal.exists()) {
+            try {
+                Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(FULL)", null);
+                cursor.moveToFirst();
+                cursor.close();
+            }
+            catch (SQLiteException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Hold the write lock so that the files do not change while they are copied
+        db.beginTransaction();
+        try {
+            copyFile(new File(db.getPath()), new File(absolutePath));
+            if (wal.length() > 0) {
+                copyFile(wal, new File(absolutePath + "-wal"));
+            }
+            return true;
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            deleteDatabaseFiles(absolutePath);
+            return false;
+        }
+        finally {
             db.endTransaction();
+        }
+    }
+
+    /**
+     * Return the version of the SQLite library, for example {@code "3.8.4.3"}.
+     *
+     * @param db Any open database.
+     * @return The version string, or {@code null} if it could not be read.
+     */
+    public static String getSQLiteVersion(SQLiteDatabase db) {
+        String version = sqliteVersion;
+        if (version == null) {
+            try {
+                sqliteVersion = version = DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null);
+            }
+            catch (SQLiteException e) {
+                e.printStackTrace();
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Return {@code true} if the SQLite library is at least the given version.
+     *
+     * @param db Any open database.
+     * @param major The major version.
+     * @param minor The minor version.
+     * @param patch The patch level.
+     * @return {@code true} if the library version is the same or newer, {@code false} if it is older or unknown.
+     */
+    public static boolean isSQLiteVersionAtLeast(SQLiteDatabase db, int major, int minor, int patch) {
+        String version = getSQLiteVersion(db);
+        if (version == null) {
             return false;
         }
+        int[] required = { major, minor, patch };
+        String[] parts = version.split("\\.");
+        for (int i = 0; i < required.length; i++) {
+            int actual;
+            try {
+                actual = i < parts.length ? Integer.parseInt(parts[i]) : 0;
+            }
+            catch (NumberFormatException e) {
+                return false;
+            }
+            if (actual != required[i]) {
+                return actual > required[i];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Import tables from a database file at {@code absolutePath}.
+     *
+     * @param context The {@link android.content.Context} used to open the database.
+     * @param absolutePath The absolute path of the database file.
+     * @param tableName The name of the table to import.
+     * @return {@code true} if successful, {@code false} upon failure or if the file is not valid.
+     */
+    public static boolean importTable(Context context, String absolutePath, String tableName) {
+        return importTable(context, OpenHelper.DATABASE_NAME, absolutePath, tableName);
+    }
+
+    /**
+     * Import tables from a database file at {@code absolutePath}.
+     *
+     * @param context The {@link android.content.Context} used to open the database.
+     * @param databaseName The name of the database, as registered with {@link OpenHelper#register(String, int)}.
+     * @param absolutePath The absolute path of the database file.
+     * @param tableName The name of the table to import.
+     * @return {@code true} if successful, {@code false} upon failure or if the file is not valid.
+     */
+    public static boolean importTable(Context context, String databaseName, String absolutePath, String tableName) {
+        return importTableWithTimings(context, databaseName, absolutePath, tableName) != null;
+    }
+
+    /**
+     * Import a table, and its indexes, from a database file at {@code absolutePath}, replacing any existing table with the same name. <p> The
+     * indexes are not created until all rows have been copied, so each is built in one sorted pass instead of being maintained row by row. They are
+     * taken from the imported file, or, if the file has none for the table, from the existing local table. </p>
+     *
+     * @param context The {@link android.content.Context} used to open the database.
+     * @param absolutePath The absolute path of the database file.
+     * @param tableName The name of the table to import.
+     * @return The row count, load time and index build time, or {@code null} upon failure or if the file is not valid.
+     */
+    public static TableTimings importTableWithTimings(Context context, String absolutePath, String tableName) {
+        return importTableWithTimings(context, OpenHelper.DATABASE_NAME, absolutePath, tableName);
+    }
+
+    /**
+     * Import a table, and its indexes, from a database file at {@code absolutePath}, replacing any existing table with the same name. <p> The
+     * indexes are not created until all rows have been copied, so each is built in one sorted pass instead of being maintained row by row. They are
+     * taken from the imported file, or, if the file has none for the table, from the existing local table. </p>
+     *
+     * @param context The {@link android.content.Context} used to open the database.
+     * @param databaseName The name of the database, as registered with {@link OpenHelper#register(String, int)}.
+     * @param absolutePath The absolute path of the database file.
+     * @param tableName The name of the table to import.
+     * @return The row count, load time and index build time, or {@code null} upon failure or if the file is not valid.
+     */
+    public static TableTimings importTableWithTimings(Context context, String databaseName, String absolutePath, String tableName) {
+        // Open the database file to validate
+        try {
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(absolutePath, null, SQLiteDatabase.OPEN_READONLY);
+            db.close();
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        // Attach the external database so we can include it in SQL query
+        SQLiteDatabase db = OpenHelper.getDatabase(context, databaseName);
+        detachDatabase(db, "Import");
+        if (!attachDatabase(db, absolutePath, "Import")) {
+            return null;
+        }
+
+        TableTimings timings = new TableTimings(tableName);
+        try {
+            // Begin a new transaction
+            db.beginTransaction();
+            try {
+                long start = System.nanoTime();
+
+                // Hold back the indexes until the data is loaded, keeping the local ones if the file has none
+                List<String> indexSql = listIndexSql(db, "Import", tableName);
+                if (indexSql.isEmpty()) {
+                    indexSql = listIndexSql(db, null, tableName);
+                }
+
+                // Remove any existing table with this name, which also drops its indexes
+                db.execSQL("DROP TABLE IF EXISTS " + quoteIdentifier(tableName));
+
+                // Create the new table
+                String sql = DatabaseUtils.stringForQuery(db, "SELECT sql FROM Import.sqlite_master WHERE type='table' AND name=?",
+                        new String[] { tableName });
+                db.execSQL(sql);
+                SchemaCache.invalidate(db, tableName);
+
+                // Copy all data from the external database to the internal database
+                long count = copyRecords(db, tableName, "Import." + tableName, null, null, SQLiteDatabase.CONFLICT_REPLACE);
+                if (count == -1) {
+                    return null;
+                }
+                timings.setRowCount(count);
+                timings.addLoadNanos(System.nanoTime() - start);
+
+                // Build the indexes now that the data is in place
+                start = System.nanoTime();
+                for (String createIndex : indexSql) {
+                    db.execSQL(createIndex);
+                }
+                timings.addIndexNanos(System.nanoTime() - start);
+
+                // Commit the changes
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+        finally {
+            // Detach the external database
+            detachDatabase(db, "Import");
+        }
+
+        return timings;
+    }
+
+    /**
+     * Merge a delta file written by {@link #exportChangesSince(Context, Collection, String, long)} into existing tables. <p> For each table listed in
+     * the file, rows named in its tombstones are deleted first, then the exported rows are merged on the primary key. With SQLite 3.24 or later the
+     * merge is an {@code INSERT ... ON CONFLICT DO UPDATE} whose update only fires when a column actually differs; on older versions rows identical
+     * to the local copy are filtered out and the rest are written with {@code INSERT OR REPLACE}. Either way, rows that did not change are never
+     * rewritten and their index entries are left alone. Local columns missing from the delta keep their value on the upsert path but are reset to
+     * their default by {@code REPLACE}. Everything is applied in one transaction. The tables must already exist; use {@link #importTable(Context,
+     * String, String)} for the initial load. </p> <p> The merged rows and deletions are not recorded in the {@link ChangeTracker} log, so the next
+     * delta export does not send them back to where they came from. Changes logged before the import are kept. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param absolutePath The absolute path of the delta file.
+     * @return The number of rows inserted or updated in each table, and the time taken, in file order, or {@code null} if an error occurred or the
+     * file is not a delta file.
+     */
+    public static Map<String, TableTimings> importChanges(Context context, String absolutePath) {
+        return importChanges(context, OpenHelper.DATABASE_NAME, absolutePath);
+    }
+
+    /**
+     * Merge a delta file written by {@link #exportChangesSince(Context, Collection, String, long)} into existing tables. <p> For each table listed in
+     * the file, rows named in its tombstones are deleted first, then the exported rows are merged on the primary key. With SQLite 3.24 or later the
+     * merge is an {@code INSERT ... ON CONFLICT DO UPDATE} whose update only fires when a column actually differs; on older versions rows identical
+     * to the local copy are filtered out and the rest are written with {@code INSERT OR REPLACE}. Either way, rows that did not change are never
+     * rewritten and their index entries are left alone. Local columns missing from the delta keep their value on the upsert path but are reset to
+     * their default by {@code REPLACE}. Everything is applied in one transaction. The tables must already exist; use {@link #importTable(Context,
+     * String, String)} for the initial load. </p> <p> The merged rows and deletions are not recorded in the {@link ChangeTracker} log, so the next
+     * delta export does not send them back to where they came from. Changes logged before the import are kept. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param databaseName The name of the database, as registered with {@link OpenHelper#register(String, int)}.
+     * @param absolutePath The absolute path of the delta file.
+     * @return The number of rows inserted or updated in each table, and the time taken, in file order, or {@code null} if an error occurred or the
+     * file is not a delta file.
+     */
+    public static Map<String, TableTimings> importChanges(Context context, String databaseName, String absolutePath) {
+        // Open the database file to validate
+        try {
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(absolutePath, null, SQLiteDatabase.OPEN_READONLY);
+            db.close();
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        // Attach the external database so we can include it in SQL query
+        SQLiteDatabase db = OpenHelper.getDatabase(context, databaseName);
+        detachDatabase(db, "Import");
+        if (!attachDatabase(db, absolutePath, "Import")) {
+            return null;
+        }
+
+        boolean upsert = isSQLiteVersionAtLeast(db, 3, 24, 0);
+        LinkedHashMap<String, TableTimings> result = new LinkedHashMap<String, TableTimings>();
+        try {
+            ArrayList<String> tableNames = new ArrayList<String>();
+            Cursor cursor = db.query("Import." + ChangeTracker.DELTA_TABLE, new String[] { "tbl" }, null, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    tableNames.add(cursor.getString(0));
+                }
+            }
+            finally {
+                cursor.close();
+            }
+
+            // Begin a new transaction
+            db.beginTransaction();
+            try {
+                // Anything logged after this token is the merge itself, and is discarded before committing
+                long token = ChangeTracker.getCurrentToken(db);
+                for (String tableName : tableNames) {
+                    long start = System.nanoTime();
+                    TableTimings timings = new TableTimings(tableName);
+                    result.put(tableName, timings);
+
+                    String keyColumn = ChangeTracker.getKeyColumn(db, tableName);
+                    List<String> columns = commonColumns(db, tableName, "Import." + tableName, SchemaCache.readSchemaVersion(db));
+                    if (keyColumn == null || columns == null) {
+                        return null;
+                    }
+                    String table = quoteIdentifier(tableName);
+                    String key = quoteIdentifier(keyColumn);
+
+                    // Apply the deletions first, so that a key deleted and then inserted again ends up present
+                    if (safeExecuteForChangedRowCount(db, "DELETE FROM main." + table + " WHERE " + key + " IN (SELECT row_key FROM Import."
+                            + ChangeTracker.TOMBSTONE_TABLE + " WHERE tbl=?)", new Object[] { tableName }) == -1) {
+                        return null;
+                    }
+
+                    long count = safeExecuteForChangedRowCount(db, buildMergeSql(tableName, keyColumn, columns, upsert), null);
+                    if (count == -1) {
+                        return null;
+                    }
+                    timings.setRowCount(count);
+                    timings.addLoadNanos(System.nanoTime() - start);
+                }
+                if (!ChangeTracker.discardAfter(db, token)) {
+                    return null;
+                }
+
+                // Commit changes
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+        finally {
+            // Detach the external database
+            detachDatabase(db, "Import");
+        }
+
+        return result;
+    }
+
+    /**
+     * Export a table to a compact binary file written by {@link BinaryTableWriter}. <p> Rows are streamed from a cursor straight to the file, so
+     * unlike {@link #exportTable(Context, String, String)} no second database is created, attached or synced. The file can be read back with
+     * {@link #importTableFromFile(Context, String)}. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param tableName The table to export.
+     * @param absolutePath The path of the file to create or overwrite.
+     * @param deflate {@code true} to compress the rows.
+     * @return The number of rows exported, or -1 if an error occurred.
+     */
+    public static long exportTableToFile(Context context, String tableName, String absolutePath, boolean deflate) {
+        return exportTableToFile(context, OpenHelper.DATABASE_NAME, tableName, absolutePath, deflate);
+    }
+
+    /**
+     * Export a table to a compact binary file written by {@link BinaryTableWriter}. <p> Rows are streamed from a cursor straight to the file, so
+     * unlike {@link #exportTable(Context, String, String)} no second database is created, attached or synced. The file can be read back with
+     * {@link #importTableFromFile(Context, String)}. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param databaseName The name of the database, as registered with {@link OpenHelper#register(String, int)}.
+     * @param tableName The table to export.
+     * @param absolutePath The path of the file to create or overwrite.
+     * @param deflate {@code true} to compress the rows.
+     * @return The number of rows exported, or -1 if an error occurred.
+     */
+    public static long exportTableToFile(Context context, String databaseName, String tableName, String absolutePath, boolean deflate) {
+        SQLiteDatabase db = OpenHelper.getDatabase(context, databaseName);
+        String createSql = safeQueryForString(db, "sqlite_master", "sql", "type='table' AND name=?", new String[] { tableName });
+        if (createSql == null) {
+            return -1;
+        }
+
+        Cursor cursor = null;
+        BinaryTableWriter writer = null;
+        try {
+            cursor = db.query(tableName, null, null, null, null, null, null);
+            writer = new BinaryTableWriter(new File(absolutePath), tableName, createSql, cursor.getColumnNames(), deflate);
+            while (cursor.moveToNext()) {
+                writer.writeRow(cursor);
+            }
+            long count = writer.getRowCount();
+            writer.close();
+            writer = null;
+            return count;
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return -1;
+        }
+        finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            closeQuietly(writer);
+        }
+    }
 
-        // Copy all data from the internal database to the external database
-        if (copyRecords(db, exportTableName, tableName, null, null, SQLiteDatabase.CONFLICT_REPLACE) == -1) {
-            db.endTransaction();
-            return false;
-        }
+    /**
+     * Import a table from a binary file written by {@link #exportTableToFile(Context, String, String, boolean)}. <p> Any existing table with the
+     * exported table's name is replaced by a table created from the statement stored in the file, then the rows are inserted through one compiled
+     * statement and the existing table's indexes are rebuilt. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param absolutePath The path of the file to import.
+     * @return The number of rows imported, or -1 if an error occurred or the file is not valid.
+     */
+    public static long importTableFromFile(Context context, String absolutePath) {
+        return importTableFromFile(context, OpenHelper.DATABASE_NAME, absolutePath);
+    }
 
-        // Commit changes
-        db.setTransactionSuccessful();
-        db.endTransaction();
+    /**
+     * Import a table from a binary file written by {@link #exportTableToFile(Context, String, String, boolean)}. <p> Any existing table with the
+     * exported table's name is replaced by a table created from the statement stored in the file, then the rows are inserted through one compiled
+     * statement and the existing table's indexes are rebuilt. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param databaseName The name of the database, as registered with {@link OpenHelper#register(String, int)}.
+     * @param absolutePath The path of the file to import.
+     * @return The number of rows imported, or -1 if an error occurred or the file is not valid.
+     */
+    public static long importTableFromFile(Context context, String databaseName, String absolutePath) {
+        TableTimings timings = importTableFromFile(context, databaseName, absolutePath, false, Integer.MAX_VALUE);
+        return timings == null ? -1 : timings.getRowCount();
+    }
 
-        // Detach the external database
-        safeExecSql(db, "DETACH DATABASE Export");
+    /**
+     * Import a table from a binary file written by {@link #exportTableToFile(Context, String, String, boolean)}, memory-mapping the file. <p> Any
+     * existing table with the exported table's name is replaced by a table created from the statement stored in the file. Rows are decoded
+     * straight out of the mapping and inserted through one reused compiled statement into a staging table, committing every {@code batchSize} rows
+     * so that the journal stays small, then the staging table replaces the existing one and the existing table's indexes are rebuilt. Compressed
+     * files cannot be mapped and are read through a buffer instead. If an error occurs, the existing table is left untouched. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param absolutePath The path of the file to import.
+     * @param batchSize The number of rows inserted per transaction.
+     * @return The row count, load time and throughput of the import, or {@code null} if an error occurred or the file is not valid.
+     */
+    public static TableTimings importTableFromFileMapped(Context context, String absolutePath, int batchSize) {
+        return importTableFromFileMapped(context, OpenHelper.DATABASE_NAME, absolutePath, batchSize);
+    }
 
-        return true;
+    /**
+     * Import a table from a binary file written by {@link #exportTableToFile(Context, String, String, boolean)}, memory-mapping the file. <p> Any
+     * existing table with the exported table's name is replaced by a table created from the statement stored in the file. Rows are decoded
+     * straight out of the mapping and inserted through one reused compiled statement into a staging table, committing every {@code batchSize} rows
+     * so that the journal stays small, then the staging table replaces the existing one and the existing table's indexes are rebuilt. Compressed
+     * files cannot be mapped and are read through a buffer instead. If an error occurs, the existing table is left untouched. </p>
+     *
+     * @param context The {@link Context} used to open the database.
+     * @param databaseName The name of the database, as registered with {@link OpenHelper#register(String, int)}.
+     * @param absolutePath The path of the file to import.
+     * @param batchSize The number of rows inserted per transaction.
+     * @return The row count, load time and throughput of the import, or {@code null} if an error occurred or the file is not valid.
+     */
+    public static TableTimings importTableFromFileMapped(Context context, String databaseName, String absolutePath, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        return importTableFromFile(context, databaseName, absolutePath, true, batchSize);
     }
 
     /**
-     * Import tables from a database file at {@code absolutePath}.
+     * Import a table from a binary file. The rows are loaded into a staging table, committing every {@code batchSize} rows, and the staging table
+     * replaces the existing table in one final transaction, which also rebuilds the indexes the existing table had. Until then the existing table
+     * is left untouched, and a failed import only drops the staging table.
      *
-     * @param context The {@link android.content.Context} used to open the database.
-     * @param absolutePath The absolute path of the database file.
-     * @param tableName The name of the table to import.
-     * @return {@code true} if successful, {@code false} upon failure or if the file is not valid.
+     * @param context The {@link Context} used to open the database.
+     * @param databaseName The name of the database.
+     * @param absolutePath The path of the file to import.
+     * @param map {@code true} to memory-map the file.
+     * @param batchSize The number of rows inserted per transaction.
+     * @return The row count, load time and index build time of the import, or {@code null} if an error occurred or the file is not valid.
      */
-    public static boolean importTable(Context context, String absolutePath, String tableName) {
-        // Open the database file to validate
+    private static TableTimings importTableFromFile(Context context, String databaseName, String absolutePath, boolean map, int batchSize) {
+        long start = System.nanoTime();
+        BinaryTableReader reader;
         try {
-            SQLiteDatabase db = SQLiteDatabase.openDatabase(absolutePath, null, SQLiteDatabase.OPEN_READONLY);
-            db.close();
+            reader = new BinaryTableReader(new File(absolutePath), map);
         }
-        catch (SQLiteException e) {
+        catch (IOException e) {
             e.printStackTrace();
-            return false;
+            return null;
         }
 
-        // Attach the external database so we can include it in SQL query
-        SQLiteDatabase db = OpenHelper.getDatabase(context);
-        safeExecSql(db, "DETACH DATABASE Import");
-        if (!safeExecSql(db, "ATTACH DATABASE '" + absolutePath + "' AS Import")) {
-            return false;
-        }
+        SQLiteDatabase db = OpenHelper.getDatabase(context, databaseName);
+        String tableName = reader.getTableName();
+        String stagingName = "sqliteutils_import_" + tableName;
+        SQLiteStatement statement = null;
+        TableTimings timings = new TableTimings(tableName);
+        boolean inTransaction = false;
+        boolean swapped = false;
+        try {
+            if (reader.getCreateSql() == null) {
+                return null;
+            }
+            // The file only describes the table, so keep the indexes the existing table has
+            List<String> indexSql = listIndexSql(db, null, tableName);
 
-        // Begin a new transaction
-        db.beginTransaction();
+            db.beginTransaction();
+            inTransaction = true;
+            db.execSQL("DROP TABLE IF EXISTS " + quoteIdentifier(stagingName));
+            db.execSQL(renameCreateSql(reader.getCreateSql(), stagingName));
 
-        // Remove any existing table with this name
-        db.execSQL("DROP TABLE IF EXISTS " + tableName);
+            statement = db.compileStatement(buildInsert(stagingName, reader.getColumnNames()));
+            Object[] values = new Object[reader.getColumnNames().length];
+            long count = 0;
+            while (reader.readRow(values)) {
+                statement.clearBindings();
+                for (int i = 0; i < values.length; i++) {
+                    DatabaseUtils.bindObjectToProgram(statement, i + 1, values[i]);
+                }
+                statement.executeInsert();
+                if (++count % batchSize == 0) {
+                    db.setTransactionSuccessful();
+                    inTransaction = false;
+                    db.endTransaction();
+                    db.beginTransaction();
+                    inTransaction = true;
+                }
+            }
+            db.setTransactionSuccessful();
+            inTransaction = false;
+            db.endTransaction();
+            timings.setRowCount(count);
+            timings.addLoadNanos(System.nanoTime() - start);
 
-        // Create the new table
-        String sql;
-        try {
-            sql = DatabaseUtils.stringForQuery(db, "SELECT sql FROM Import.sqlite_master WHERE type='table' AND name='" + tableName + "'", null);
-            db.execSQL(sql);
+            // Swap the staging table in and build the indexes in one transaction
+            start = System.nanoTime();
+            db.beginTransaction();
+            inTransaction = true;
+            db.execSQL("DROP TABLE IF EXISTS " + quoteIdentifier(tableName));
+            db.execSQL("ALTER TABLE " + quoteIdentifier(stagingName) + " RENAME TO " + quoteIdentifier(tableName));
+            for (String createIndex : indexSql) {
+                db.execSQL(createIndex);
+            }
+            db.setTransactionSuccessful();
+            inTransaction = false;
+            db.endTransaction();
+            swapped = true;
+            timings.addIndexNanos(System.nanoTime() - start);
+            return timings;
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return null;
         }
         catch (SQLiteException e) {
             e.printStackTrace();
-            db.endTransaction();
-            return false;
+            return null;
         }
-
-        // Copy all data from the external database to the internal database
-        if (copyRecords(db, tableName, "Import." + tableName, null, null, SQLiteDatabase.CONFLICT_REPLACE) == -1) {
-            db.endTransaction();
-            return false;
+        finally {
+            if (statement != null) {
+                statement.close();
+            }
+            if (inTransaction) {
+                db.endTransaction();
+            }
+            if (!swapped) {
+                safeExecSql(db, "DROP TABLE IF EXISTS " + quoteIdentifier(stagingName));
+            }
+            SchemaCache.invalidate(db, tableName);
+            SchemaCache.invalidate(db, stagingName);
+            closeQuietly(reader);
         }
-
-        // Commit the changes
-        db.setTransactionSuccessful();
-        db.endTransaction();
-
-        // Detach the external database
-        safeExecSql(db, "DETACH DATABASE External");
-
-        return true;
     }
 
     /**
@@ -875,6 +2555,440 @@ public class SQLiteUtils {
         }
     }
 
+    /**
+     * Execute a single SQL statement that modifies rows, eating any exception that occurs.
+     *
+     * @param db The database against which to execute the statement.
+     * @param sql The SQL statement to execute.
+     * @param bindArgs Arguments to the statement, bound according to their type, or {@code null} if there are no arguments.
+     * @return The number of rows inserted, updated or deleted by the statement, or -1 if an error occurred.
+     */
+    private static long safeExecuteForChangedRowCount(SQLiteDatabase db, String sql, Object[] bindArgs) {
+        try {
+            SQLiteStatement statement = db.compileStatement(sql);
+            try {
+                if (bindArgs != null) {
+                    for (int i = 0; i < bindArgs.length; i++) {
+                        DatabaseUtils.bindObjectToProgram(statement, i + 1, bindArgs[i]);
+                    }
+                }
+                return statement.executeUpdateDelete();
+            }
+            finally {
+                statement.close();
+            }
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Build the statement merging the rows of {@code Import.tableName} into the main table of the same name, skipping rows that are unchanged.
+     *
+     * @param tableName The unqualified table name.
+     * @param keyColumn The primary key column.
+     * @param columns The columns to merge, including the key.
+     * @param upsert {@code true} to use {@code ON CONFLICT DO UPDATE}, which needs SQLite 3.24, {@code false} to use {@code INSERT OR REPLACE}.
+     * @return The SQL statement.
+     */
+    private static String buildMergeSql(String tableName, String keyColumn, List<String> columns, boolean upsert) {
+        String table = quoteIdentifier(tableName);
+        String key = quoteIdentifier(keyColumn);
+        String columnList = joinColumns(columns);
+        StringBuilder sql = new StringBuilder();
+        if (upsert) {
+            // The WHERE clause is required to parse ON CONFLICT after INSERT ... SELECT
+            sql.append("INSERT INTO main.").append(table).append(" (").append(columnList).append(") SELECT ").append(columnList)
+                    .append(" FROM Import.").append(table).append(" WHERE true ON CONFLICT(").append(key).append(") DO ");
+            StringBuilder set = new StringBuilder();
+            StringBuilder changed = new StringBuilder();
+            for (String column : columns) {
+                if (column.equalsIgnoreCase(keyColumn)) {
+                    continue;
+                }
+                String name = quoteIdentifier(column);
+                if (set.length() > 0) {
+                    set.append(',');
+                    changed.append(" OR ");
+                }
+                set.append(name).append("=excluded.").append(name);
+                changed.append(table).append('.').append(name).append(" IS NOT excluded.").append(name);
+            }
+            if (set.length() == 0) {
+                sql.append("NOTHING");
+            }
+            else {
+                sql.append("UPDATE SET ").append(set).append(" WHERE ").append(changed);
+            }
+        }
+        else {
+            StringBuilder same = new StringBuilder();
+            for (String column : columns) {
+                String name = quoteIdentifier(column);
+                same.append(" AND local.").append(name).append(" IS incoming.").append(name);
+            }
+            sql.append("INSERT OR REPLACE INTO main.").append(table).append(" (").append(columnList).append(") SELECT ").append(columnList)
+                    .append(" FROM Import.").append(table).append(" AS incoming WHERE NOT EXISTS (SELECT 1 FROM main.").append(table)
+                    .append(" AS local WHERE local.").append(key).append("=incoming.").append(key).append(same).append(')');
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Return the SQL conflict clause, including a trailing space, for a conflict algorithm.
+     *
+     * @param conflictAlgorithm One of the {@code SQLiteDatabase.CONFLICT_*} constants.
+     * @return The conflict clause, or an empty string for {@link SQLiteDatabase#CONFLICT_NONE}.
+     */
+    private static String conflictClause(int conflictAlgorithm) {
+        switch (conflictAlgorithm) {
+            case SQLiteDatabase.CONFLICT_IGNORE:
+                return "OR IGNORE ";
+            case SQLiteDatabase.CONFLICT_ABORT:
+                return "OR ABORT ";
+            case SQLiteDatabase.CONFLICT_FAIL:
+                return "OR FAIL ";
+            case SQLiteDatabase.CONFLICT_REPLACE:
+                return "OR REPLACE ";
+            case SQLiteDatabase.CONFLICT_ROLLBACK:
+                return "OR ROLLBACK ";
+            case SQLiteDatabase.CONFLICT_NONE:
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Return a new argument array with values inserted before the given arguments.
+     *
+     * @param args The original arguments, or {@code null}.
+     * @param first The values to put first.
+     * @return The combined arguments.
+     */
+    private static Object[] prependArgs(Object[] args, Object... first) {
+        if (args == null || args.length == 0) {
+            return first;
+        }
+        Object[] result = new Object[first.length + args.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(args, 0, result, first.length, args.length);
+        return result;
+    }
+
+    /**
+     * Attach a database file, forgetting any columns cached for a database attached earlier under the same name.
+     *
+     * @param db The connection to attach the file to.
+     * @param path The path of the database file.
+     * @param schemaName The name to attach it under.
+     * @return {@code true} if successful, {@code false} otherwise.
+     */
+    private static boolean attachDatabase(SQLiteDatabase db, String path, String schemaName) {
+        SchemaCache.invalidateSchema(db, schemaName);
+        return safeExecSql(db, "ATTACH DATABASE ? AS " + schemaName, new Object[] { path });
+    }
+
+    /**
+     * Detach a database, if attached, and forget the columns cached for its tables.
+     *
+     * @param db The connection the database is attached to.
+     * @param schemaName The name it is attached under.
+     */
+    private static void detachDatabase(SQLiteDatabase db, String schemaName) {
+        safeExecSql(db, "DETACH DATABASE " + schemaName);
+        SchemaCache.invalidateSchema(db, schemaName);
+    }
+
+    /**
+     * Return the columns present in both tables, in source declaration order.
+     *
+     * @param db The database containing both tables.
+     * @param destinationTable The destination table name.
+     * @param sourceTable The source table name.
+     * @param schemaVersion The current {@code schema_version}, as returned by {@link SchemaCache#readSchemaVersion(SQLiteDatabase)}, or -1 if it
+     * could not be read.
+     * @return The common column names, or {@code null} if either table does not exist, the schema version could not be read or they have no
+     * column in common.
+     */
+    private static List<String> commonColumns(SQLiteDatabase db, String destinationTable, String sourceTable, long schemaVersion) {
+        if (schemaVersion < 0) {
+            return null;
+        }
+        List<String> sourceColumns = SchemaCache.getColumnNames(db, sourceTable, schemaVersion);
+        List<String> destinationColumns = SchemaCache.getColumnNames(db, destinationTable, schemaVersion);
+        if (sourceColumns == null || destinationColumns == null) {
+            return null;
+        }
+        Set<String> destination = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+        destination.addAll(destinationColumns);
+        ArrayList<String> columns = new ArrayList<String>(sourceColumns.size());
+        for (String column : sourceColumns) {
+            if (destination.contains(column)) {
+                columns.add(column);
+            }
+        }
+        return columns.isEmpty() ? null : columns;
+    }
+
+    /**
+     * Quote an SQL identifier.
+     *
+     * @param name The identifier.
+     * @return The identifier in double quotes.
+     */
+    static String quoteIdentifier(String name) {
+        return '"' + name.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Return the {@code CREATE INDEX} statements of a table's explicitly created indexes.
+     *
+     * @param db The database containing the table.
+     * @param schema The name of the attached database containing the table, or {@code null} for the main database.
+     * @param tableName The unqualified table name.
+     * @return The index statements, empty if the table has none.
+     * @throws SQLiteException If the schema could not be read.
+     */
+    private static List<String> listIndexSql(SQLiteDatabase db, String schema, String tableName) {
+        String master = schema == null ? "sqlite_master" : schema + ".sqlite_master";
+        Cursor cursor = db.query(master, new String[] { "sql" }, "type='index' AND tbl_name=? AND sql IS NOT NULL", new String[] { tableName }, null,
+                null, null);
+        ArrayList<String> indexes = new ArrayList<String>();
+        try {
+            while (cursor.moveToNext()) {
+                indexes.add(cursor.getString(0));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return indexes;
+    }
+
+    /**
+     * Qualify the name of the table or index created by a {@code CREATE} statement with the name of an attached database.
+     *
+     * @param sql The {@code CREATE TABLE} or {@code CREATE INDEX} statement, as stored in {@code sqlite_master}.
+     * @param schema The name of the attached database.
+     * @return The qualified statement.
+     */
+    private static String qualifyCreateSql(String sql, String schema) {
+        Matcher matcher = CREATE_PREFIX.matcher(sql);
+        if (!matcher.lookingAt()) {
+            throw new SQLiteException("Unrecognized schema statement: " + sql);
+        }
+        return sql.substring(0, matcher.end()) + schema + "." + sql.substring(matcher.end());
+    }
+
+    /**
+     * Replace the name of the table created by a {@code CREATE TABLE} statement.
+     *
+     * @param sql The {@code CREATE TABLE} statement.
+     * @param tableName The new, unqualified table name.
+     * @return The statement creating {@code tableName}.
+     */
+    private static String renameCreateSql(String sql, String tableName) {
+        Matcher matcher = CREATE_PREFIX.matcher(sql);
+        if (!matcher.lookingAt()) {
+            throw new SQLiteException("Unrecognized schema statement: " + sql);
+        }
+        int start = matcher.end();
+        int end;
+        char first = start < sql.length() ? sql.charAt(start) : ' ';
+        if (first == '"' || first == '`' || first == '[') {
+            // A quoted name ends at the matching quote; doubled quotes are part of the name
+            char close = first == '[' ? ']' : first;
+            end = start + 1;
+            while (end < sql.length() && (sql.charAt(end) != close || (end + 1 < sql.length() && sql.charAt(end + 1) == close && close != ']'))) {
+                end += sql.charAt(end) == close ? 2 : 1;
+            }
+            end++;
+        }
+        else {
+            end = start;
+            while (end < sql.length() && !Character.isWhitespace(sql.charAt(end)) && sql.charAt(end) != '(') {
+                end++;
+            }
+        }
+        return sql.substring(0, start) + quoteIdentifier(tableName) + sql.substring(Math.min(end, sql.length()));
+    }
+
+    /**
+     * Copy a file through the file system cache with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+     *
+     * @param source The file to copy.
+     * @param destination The file to create or overwrite.
+     * @throws IOException If the copy failed.
+     */
+    private static void copyFile(File source, File destination) throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileOutputStream out = new FileOutputStream(destination);
+            try {
+                FileChannel inChannel = in.getChannel();
+                FileChannel outChannel = out.getChannel();
+                long size = inChannel.size();
+                long position = 0;
+                while (position < size) {
+                    position += inChannel.transferTo(position, size - position, outChannel);
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Delete a database file together with its journal files, if they exist.
+     *
+     * @param path The database file path.
+     */
+    private static void deleteDatabaseFiles(String path) {
+        String[] suffixes = { "", "-journal", "-wal", "-shm" };
+        for (String suffix : suffixes) {
+            File file = new File(path + suffix);
+            if (file.exists() && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Build an {@code INSERT OR REPLACE} statement with one parameter per column.
+     *
+     * @param tableName The table to insert into.
+     * @param columns The column names.
+     * @return The SQL statement.
+     */
+    private static String buildInsert(String tableName, String[] columns) {
+        StringBuilder sb = new StringBuilder("INSERT OR REPLACE INTO ").append(quoteIdentifier(tableName)).append('(');
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(quoteIdentifier(columns[i]));
+        }
+        sb.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sb.append(i > 0 ? ",?" : "?");
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Close a stream, eating any exception that occurs.
+     *
+     * @param closeable The stream to close, or {@code null}.
+     */
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Join column names into a comma-separated list of quoted identifiers.
+     *
+     * @param columns The column names.
+     * @return The column list.
+     */
+    private static String joinColumns(List<String> columns) {
+        StringBuilder sb = new StringBuilder();
+        for (String column : columns) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(quoteIdentifier(column));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Run a numeric scalar query through the connection's {@link StatementCache}. As with {@code db.query}, an error compiling the query is thrown,
+     * while an error running it is logged.
+     *
+     * @param db The database to query.
+     * @param sql The SQL query.
+     * @param selectionArgs Arguments bound according to their type, or {@code null}.
+     * @return The value of the first row, or {@code null} if the query returned no rows or an error occurred.
+     * @throws SQLiteException If the query could not be compiled.
+     */
+    private static Long cachedQueryForLong(SQLiteDatabase db, String sql, Object[] selectionArgs) {
+        StatementCache statements = StatementCache.forDatabase(db);
+        SQLiteStatement statement = statements.acquire(sql);
+        try {
+            StatementCache.bind(statement, selectionArgs);
+            return statement.simpleQueryForLong();
+        }
+        catch (SQLiteDoneException e) {
+            // The query returned no rows
+            return null;
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+        finally {
+            statements.release(sql, statement);
+        }
+    }
+
+    /**
+     * Run a text scalar query through the connection's {@link StatementCache}. As with {@code db.query}, an error compiling the query is thrown,
+     * while an error running it is logged.
+     *
+     * @param db The database to query.
+     * @param sql The SQL query.
+     * @param selectionArgs Arguments bound according to their type, or {@code null}.
+     * @return The value of the first row, or {@code null} if the query returned no rows, the value was {@code null} or an error occurred.
+     * @throws SQLiteException If the query could not be compiled.
+     */
+    private static String cachedQueryForString(SQLiteDatabase db, String sql, Object[] selectionArgs) {
+        StatementCache statements = StatementCache.forDatabase(db);
+        SQLiteStatement statement = statements.acquire(sql);
+        try {
+            StatementCache.bind(statement, selectionArgs);
+            return statement.simpleQueryForString();
+        }
+        catch (SQLiteDoneException e) {
+            // The query returned no rows
+            return null;
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+        finally {
+            statements.release(sql, statement);
+        }
+    }
+
+    /**
+     * Build the SQL for a query returning at most one row of a single column.
+     *
+     * @param tableName The table name to compile the query against.
+     * @param column The column to return.
+     * @param selection The SQL WHERE clause (excluding the WHERE itself), or {@code null}.
+     * @param groupBy The SQL GROUP BY clause (excluding the GROUP BY itself), or {@code null}.
+     * @param having The SQL HAVING clause (excluding the HAVING itself), or {@code null}.
+     * @param orderBy The SQL ORDER BY clause (excluding the ORDER BY itself), or {@code null}.
+     * @return The SQL query.
+     */
+    private static String buildScalarQuery(String tableName, String column, String selection, String groupBy, String having, String orderBy) {
+        return SQLiteQueryBuilder.buildQueryString(false, tableName, new String[] { column }, selection, groupBy, having, orderBy, "1");
+    }
+
     /**
      * Return a human-readable representation of a byte length.
      *
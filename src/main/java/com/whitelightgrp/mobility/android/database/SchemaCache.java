@@ -0,0 +1,267 @@
+package com.whitelightgrp.mobility.android.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+/**
+ * Caches the column lists of tables, as reported by {@code PRAGMA table_info}, per database connection. <p> Each connection's cache of main
+ * database tables is tagged with the database's {@code schema_version}, which SQLite bumps on every schema change, and is discarded once the version
+ * moves on, so tables altered or recreated by any code are read again. Tables qualified with the name of an attached database (for example {@code
+ * Import.Items}) are cached for as long as that database stays attached: {@link SQLiteUtils} forgets them whenever it attaches or detaches a
+ * database, and code that attaches databases itself should call {@link #invalidateSchema(SQLiteDatabase, String)} in the same way.
+ * {@link #invalidate(SQLiteDatabase, String)} remains available to drop an entry early. Connections are held weakly. </p>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public class SchemaCache {
+
+    /**
+     * The cached tables of each connection. {@code SQLiteDatabase} does not override {@code equals}, so connections are compared by identity.
+     */
+    private static final Map<SQLiteDatabase, Tables> caches = new WeakHashMap<SQLiteDatabase, Tables>();
+    /**
+     * The cached tables of attached databases on each connection, keyed by lower-case qualified name. Guarded by {@code caches}.
+     */
+    private static final Map<SQLiteDatabase, Map<String, List<String>>> attachedCaches = new WeakHashMap<SQLiteDatabase, Map<String, List<String>>>();
+
+    /**
+     * The column lists cached for one connection, valid for one schema version.
+     */
+    private static class Tables {
+
+        /**
+         * The {@code schema_version} the column lists were read at.
+         */
+        final long schemaVersion;
+        /**
+         * Column lists keyed by lower-case table name.
+         */
+        final Map<String, List<String>> columns = new HashMap<String, List<String>>();
+
+        /**
+         * Constructor.
+         *
+         * @param schemaVersion The {@code schema_version} the column lists are read at.
+         */
+        Tables(long schemaVersion) {
+            this.schemaVersion = schemaVersion;
+        }
+    }
+
+    /**
+     * Return the column names of a table, in declaration order.
+     *
+     * @param db The database containing the table.
+     * @param tableName The table name, optionally qualified with the name of an attached database.
+     * @return The unmodifiable list of column names, or {@code null} if the table does not exist or an error occurred.
+     */
+    public static List<String> getColumnNames(SQLiteDatabase db, String tableName) {
+        if (tableName.indexOf('.') >= 0) {
+            return getAttachedColumnNames(db, tableName);
+        }
+        long schemaVersion = readSchemaVersion(db);
+        return schemaVersion < 0 ? null : getColumnNames(db, tableName, schemaVersion);
+    }
+
+    /**
+     * Return the column names of a table, in declaration order, for callers looking up several tables that have already read the schema version.
+     *
+     * @param db The database containing the table.
+     * @param tableName The table name, optionally qualified with the name of an attached database.
+     * @param schemaVersion The current {@code schema_version}, as returned by {@link #readSchemaVersion(SQLiteDatabase)}. Ignored for qualified
+     * names.
+     * @return The unmodifiable list of column names, or {@code null} if the table does not exist or an error occurred.
+     */
+    static List<String> getColumnNames(SQLiteDatabase db, String tableName, long schemaVersion) {
+        if (tableName.indexOf('.') >= 0) {
+            return getAttachedColumnNames(db, tableName);
+        }
+
+        String key = tableName.toLowerCase(Locale.US);
+        synchronized (caches) {
+            Tables tables = caches.get(db);
+            List<String> columns = tables == null || tables.schemaVersion != schemaVersion ? null : tables.columns.get(key);
+            if (columns != null) {
+                return columns;
+            }
+        }
+
+        List<String> columns = queryColumnNames(db, null, tableName);
+        if (columns != null) {
+            synchronized (caches) {
+                Tables tables = caches.get(db);
+                if (tables == null || tables.schemaVersion != schemaVersion) {
+                    pruneClosed();
+                    tables = new Tables(schemaVersion);
+                    caches.put(db, tables);
+                }
+                tables.columns.put(key, columns);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Read the {@code schema_version} of the main database, which the cached column lists of its tables are checked against.
+     *
+     * @param db The database.
+     * @return The schema version, or -1 if it could not be read.
+     */
+    static long readSchemaVersion(SQLiteDatabase db) {
+        try {
+            return PragmaProfile.queryPragma(db, "schema_version", 0);
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Forget the cached columns of a table.
+     *
+     * @param db The database containing the table.
+     * @param tableName The table name.
+     */
+    public static void invalidate(SQLiteDatabase db, String tableName) {
+        String key = tableName.toLowerCase(Locale.US);
+        synchronized (caches) {
+            Tables tables = caches.get(db);
+            if (tables != null) {
+                tables.columns.remove(key);
+            }
+            Map<String, List<String>> attached = attachedCaches.get(db);
+            if (attached != null) {
+                attached.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Forget the cached columns of every table in an attached database. Call this after attaching or detaching a database.
+     *
+     * @param db The connection the database is attached to.
+     * @param schemaName The name the database is attached under.
+     */
+    public static void invalidateSchema(SQLiteDatabase db, String schemaName) {
+        String prefix = schemaName.toLowerCase(Locale.US) + ".";
+        synchronized (caches) {
+            Map<String, List<String>> attached = attachedCaches.get(db);
+            if (attached == null) {
+                return;
+            }
+            Iterator<String> it = attached.keySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget the cached columns of every table in a database.
+     *
+     * @param db The database.
+     */
+    public static void invalidate(SQLiteDatabase db) {
+        synchronized (caches) {
+            caches.remove(db);
+            attachedCaches.remove(db);
+            pruneClosed();
+        }
+    }
+
+    /**
+     * Return the column names of a table in an attached database, reading them only if they are not cached yet.
+     *
+     * @param db The connection the database is attached to.
+     * @param tableName The table name, qualified with the name of the attached database.
+     * @return The unmodifiable list of column names, or {@code null} if the table does not exist or an error occurred.
+     */
+    private static List<String> getAttachedColumnNames(SQLiteDatabase db, String tableName) {
+        String key = tableName.toLowerCase(Locale.US);
+        synchronized (caches) {
+            Map<String, List<String>> attached = attachedCaches.get(db);
+            List<String> columns = attached == null ? null : attached.get(key);
+            if (columns != null) {
+                return columns;
+            }
+        }
+
+        int dot = tableName.indexOf('.');
+        List<String> columns = queryColumnNames(db, tableName.substring(0, dot), tableName.substring(dot + 1));
+        if (columns != null) {
+            synchronized (caches) {
+                Map<String, List<String>> attached = attachedCaches.get(db);
+                if (attached == null) {
+                    pruneClosed();
+                    attached = new HashMap<String, List<String>>();
+                    attachedCaches.put(db, attached);
+                }
+                attached.put(key, columns);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Run {@code PRAGMA table_info} for a table.
+     *
+     * @param db The database containing the table.
+     * @param schema The name of the attached database containing the table, or {@code null} for the main database.
+     * @param tableName The unqualified table name.
+     * @return The unmodifiable list of column names, or {@code null} if the table does not exist or an error occurred.
+     */
+    private static List<String> queryColumnNames(SQLiteDatabase db, String schema, String tableName) {
+        String sql = "PRAGMA " + (schema == null ? "" : schema + ".") + "table_info(" + DatabaseUtils.sqlEscapeString(tableName) + ")";
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, null);
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            ArrayList<String> columns = new ArrayList<String>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(nameIndex));
+            }
+            return columns.isEmpty() ? null : Collections.unmodifiableList(columns);
+        }
+        catch (SQLiteException e) {
+            e.printStackTrace();
+            return null;
+        }
+        finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Drop the caches of connections that have been closed. Must be called while holding the lock on {@code caches}.
+     */
+    private static void pruneClosed() {
+        Iterator<SQLiteDatabase> it = caches.keySet().iterator();
+        while (it.hasNext()) {
+            if (!it.next().isOpen()) {
+                it.remove();
+            }
+        }
+        it = attachedCaches.keySet().iterator();
+        while (it.hasNext()) {
+            if (!it.next().isOpen()) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.whitelightgrp.mobility.android.database;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * A bounded, least-recently-used cache of compiled {@link SQLiteStatement}s for a single database connection. <p> Scalar queries executed through
+ * the cache are compiled once and then only re-bound, and they read their single value directly instead of allocating a {@code Cursor} and
+ * {@code CursorWindow}. A statement is checked out of the cache while it runs and checked back in afterwards, so no statement is shared between
+ * threads and no lock is held while SQLite waits for the connection; a thread that finds its statement checked out compiles its own copy. </p>
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public class StatementCache {
+
+    /**
+     * Number of statements kept per connection.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * The cache belonging to each open connection.
+     */
+    private static final Map<SQLiteDatabase, StatementCache> caches = new IdentityHashMap<SQLiteDatabase, StatementCache>();
+
+    /**
+     * The connection the statements were compiled against.
+     */
+    private final SQLiteDatabase db;
+    /**
+     * Maximum number of statements to keep.
+     */
+    private final int capacity;
+    /**
+     * Idle compiled statements keyed by SQL text, in access order. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<String, SQLiteStatement> statements;
+    /**
+     * Number of lookups that found a compiled statement.
+     */
+    private final AtomicLong hits = new AtomicLong();
+    /**
+     * Number of lookups that had to compile a statement.
+     */
+    private final AtomicLong misses = new AtomicLong();
+    /**
+     * {@code true} once the cache has been removed from its connection, after which statements checked back in are closed. Guarded by
+     * {@code this}.
+     */
+    private boolean closed = false;
+
+    /**
+     * Return the statement cache for a connection, creating it if needed.
+     *
+     * @param db The database connection.
+     * @return The statement cache for {@code db}.
+     */
+    public static StatementCache forDatabase(SQLiteDatabase db) {
+        synchronized (caches) {
+            StatementCache cache = caches.get(db);
+            if (cache == null) {
+                // Drop caches whose connection has been closed behind our back
+                Iterator<Map.Entry<SQLiteDatabase, StatementCache>> it = caches.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<SQLiteDatabase, StatementCache> entry = it.next();
+                    if (!entry.getKey().isOpen()) {
+                        entry.getValue().clear();
+                        it.remove();
+                    }
+                }
+                cache = new StatementCache(db, DEFAULT_CAPACITY);
+                caches.put(db, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Close every cached statement for a connection, and any still checked out once they are checked back in. Call this before closing the
+     * connection.
+     *
+     * @param db The database connection.
+     */
+    public static void remove(SQLiteDatabase db) {
+        StatementCache cache;
+        synchronized (caches) {
+            cache = caches.remove(db);
+        }
+        if (cache != null) {
+            synchronized (cache) {
+                cache.closed = true;
+            }
+            cache.clear();
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param db The connection the statements are compiled against.
+     * @param capacity The maximum number of statements to keep.
+     */
+    private StatementCache(SQLiteDatabase db, int capacity) {
+        this.db = db;
+        this.capacity = capacity;
+        this.statements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true);
+    }
+
+    /**
+     * Execute a cached statement that returns a 1 by 1 table with a numeric value.
+     *
+     * @param sql The SQL query.
+     * @param bindArgs Arguments for the query, bound according to their type, or {@code null} if there are no arguments.
+     * @return The result of the query.
+     * @throws SQLiteDoneException If the query returns no rows.
+     */
+    public long simpleQueryForLong(String sql, Object[] bindArgs) {
+        SQLiteStatement statement = acquire(sql);
+        try {
+            bind(statement, bindArgs);
+            return statement.simpleQueryForLong();
+        }
+        finally {
+            release(sql, statement);
+        }
+    }
+
+    /**
+     * Execute a cached statement that returns a 1 by 1 table with a text value.
+     *
+     * @param sql The SQL query.
+     * @param bindArgs Arguments for the query, bound according to their type, or {@code null} if there are no arguments.
+     * @return The result of the query, which may be {@code null}.
+     * @throws SQLiteDoneException If the query returns no rows.
+     */
+    public String simpleQueryForString(String sql, Object[] bindArgs) {
+        SQLiteStatement statement = acquire(sql);
+        try {
+            bind(statement, bindArgs);
+            return statement.simpleQueryForString();
+        }
+        finally {
+            release(sql, statement);
+        }
+    }
+
+    /**
+     * Compile a statement into the cache ahead of its first use, so that the first query does not pay for compilation.
+     *
+     * @param sql The SQL statement, exactly as it will later be executed through the cache.
+     * @throws android.database.sqlite.SQLiteException If the statement could not be compiled.
+     */
+    public void precompile(String sql) {
+        release(sql, acquire(sql));
+    }
+
+    /**
+     * Return the number of lookups that found an already compiled statement.
+     *
+     * @return The hit count.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Return the number of lookups that had to compile a statement.
+     *
+     * @return The miss count.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Return the number of statements currently cached.
+     *
+     * @return The cache size.
+     */
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    /**
+     * Close every cached statement.
+     */
+    public void clear() {
+        ArrayList<SQLiteStatement> evicted;
+        synchronized (this) {
+            evicted = new ArrayList<SQLiteStatement>(statements.values());
+            statements.clear();
+        }
+        for (SQLiteStatement statement : evicted) {
+            statement.close();
+        }
+    }
+
+    /**
+     * Check out the compiled statement for {@code sql}, compiling it on a miss. The statement belongs to the caller until it is checked back in with
+     * {@link #release(String, SQLiteStatement)}. Compilation happens outside the cache's lock.
+     *
+     * @param sql The SQL statement.
+     * @return The compiled statement.
+     * @throws android.database.sqlite.SQLiteException If the statement could not be compiled.
+     */
+    SQLiteStatement acquire(String sql) {
+        synchronized (this) {
+            SQLiteStatement statement = statements.remove(sql);
+            if (statement != null) {
+                hits.incrementAndGet();
+                return statement;
+            }
+        }
+        misses.incrementAndGet();
+        return db.compileStatement(sql);
+    }
+
+    /**
+     * Check a statement back in. If another copy of the statement was checked in meanwhile, or the cache is full, a statement is closed instead of
+     * kept.
+     *
+     * @param sql The SQL statement.
+     * @param statement The statement returned by {@link #acquire(String)}.
+     */
+    void release(String sql, SQLiteStatement statement) {
+        SQLiteStatement evicted = null;
+        synchronized (this) {
+            if (closed || statements.containsKey(sql)) {
+                evicted = statement;
+            }
+            else {
+                statements.put(sql, statement);
+                if (statements.size() > capacity) {
+                    Iterator<Map.Entry<String, SQLiteStatement>> it = statements.entrySet().iterator();
+                    evicted = it.next().getValue();
+                    it.remove();
+                }
+            }
+        }
+        if (evicted != null) {
+            // Closed outside the lock, since closing may have to wait for the connection on older releases
+            evicted.close();
+        }
+    }
+
+    /**
+     * Replace the bindings of a statement.
+     *
+     * @param statement The statement to bind.
+     * @param bindArgs Arguments bound according to their type, or {@code null} if there are no arguments.
+     */
+    static void bind(SQLiteStatement statement, Object[] bindArgs) {
+        statement.clearBindings();
+        if (bindArgs != null) {
+            for (int i = 0; i < bindArgs.length; i++) {
+                DatabaseUtils.bindObjectToProgram(statement, i + 1, bindArgs[i]);
+            }
+        }
+    }
+}
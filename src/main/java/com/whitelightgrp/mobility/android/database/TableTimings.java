@@ -0,0 +1,131 @@
+package com.whitelightgrp.mobility.android.database;
+
+import java.util.Locale;
+
+/**
+ * Row count and elapsed times of a bulk operation on one table.
+ *
+ * @author Justin Rohde, WhiteLight Group
+ */
+public class TableTimings {
+
+    /**
+     * The table the operation ran on.
+     */
+    private final String tableName;
+    /**
+     * Number of rows loaded.
+     */
+    private long rowCount = 0;
+    /**
+     * Time spent loading rows, in nanoseconds.
+     */
+    private long loadNanos = 0;
+    /**
+     * Time spent building indexes, in nanoseconds.
+     */
+    private long indexNanos = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param tableName The table the operation ran on.
+     */
+    public TableTimings(String tableName) {
+        this.tableName = tableName;
+    }
+
+    /**
+     * Return the table the operation ran on.
+     *
+     * @return The table name.
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Return the number of rows loaded.
+     *
+     * @return The row count.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Return the time spent loading rows.
+     *
+     * @return The load time in milliseconds.
+     */
+    public long getLoadMillis() {
+        return loadNanos / 1000000L;
+    }
+
+    /**
+     * Return the time spent building indexes.
+     *
+     * @return The index build time in milliseconds.
+     */
+    public long getIndexMillis() {
+        return indexNanos / 1000000L;
+    }
+
+    /**
+     * Return the total time of the operation.
+     *
+     * @return The total time in milliseconds.
+     */
+    public long getTotalMillis() {
+        return (loadNanos + indexNanos) / 1000000L;
+    }
+
+    /**
+     * Return the load throughput.
+     *
+     * @return The number of rows loaded per second of load time, or 0 if no time was recorded.
+     */
+    public double getRowsPerSecond() {
+        return loadNanos == 0 ? 0 : rowCount * 1e9 / loadNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                Locale.US,
+                "%s: %d rows, load %d ms, indexes %d ms, %.0f rows/s",
+                tableName,
+                rowCount,
+                getLoadMillis(),
+                getIndexMillis(),
+                getRowsPerSecond()
+        );
+    }
+
+    /**
+     * Set the number of rows loaded.
+     *
+     * @param rowCount The row count.
+     */
+    void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Add to the time spent loading rows.
+     *
+     * @param nanos The elapsed time in nanoseconds.
+     */
+    void addLoadNanos(long nanos) {
+        loadNanos += nanos;
+    }
+
+    /**
+     * Add to the time spent building indexes.
+     *
+     * @param nanos The elapsed time in nanoseconds.
+     */
+    void addIndexNanos(long nanos) {
+        indexNanos += nanos;
+    }
+}